@@ -0,0 +1,170 @@
+package com.abreen.dungeon.bench;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.abreen.dungeon.model.*;
+import com.abreen.dungeon.worker.DungeonNarrator;
+
+/**
+ * JMH benchmarks for the narrator methods that run for every event or every
+ * "look": prettify(), narrateSay(), describeItems(), describeExits() and
+ * toNaturalListWithArticles(). The inputs come from the default universe
+ * file (see UniverseFixtures).
+ *
+ * Run with "make bench" from the top of the tree, so that the universe file
+ * and the phrasebook can be found.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NarratorBenchmark {
+
+    /**
+     * Strings passed to prettify(), of the kinds the dispatcher sees.
+     */
+    @State(Scope.Thread)
+    public static class Prettify {
+        /*
+         * plain: a description with no apostrophes or quotation marks
+         * contractions: a description with apostrophes but no quotations
+         * quotations: something said, with contractions inside the quotes
+         */
+        @Param({ "plain", "contractions", "quotations" })
+        public String kind;
+
+        public DungeonNarrator narrator;
+        public String input;
+
+        @Setup
+        public void setup() throws Exception {
+            UniverseFixtures u = new UniverseFixtures();
+            narrator = new DungeonNarrator();
+
+            String plain = null, contractions = null;
+            for (String d : u.descriptions)
+                if (d.indexOf('"') != -1)
+                    continue;
+                else if (d.indexOf('\'') == -1) {
+                    if (plain == null)
+                        plain = d;
+                } else if (contractions == null)
+                    contractions = d;
+
+            if (plain == null || contractions == null)
+                throw new IllegalStateException(UniverseFixtures.UNIVERSE_FILE
+                        + " lacks a description of each kind");
+
+            if (kind.equals("plain"))
+                input = plain;
+            else if (kind.equals("contractions"))
+                input = contractions;
+            else if (kind.equals("quotations"))
+                input = narrator.narrateSay("Alexander", contractions);
+            else
+                throw new IllegalArgumentException("unknown kind " + kind);
+        }
+    }
+
+    /**
+     * Messages passed to narrateSay(), made of sentences from the
+     * descriptions.
+     */
+    @State(Scope.Thread)
+    public static class Say {
+        @Param({ "1", "8", "32" })
+        public int sentences;
+
+        public DungeonNarrator narrator;
+        public String message;
+
+        @Setup
+        public void setup() throws Exception {
+            UniverseFixtures u = new UniverseFixtures();
+            narrator = new DungeonNarrator();
+            message = u.message(sentences);
+
+            /* Loads the phrasebook, which is done lazily */
+            narrator.narrateSay("Alexander", message);
+        }
+    }
+
+    /**
+     * A room with many items, and the same items as a list.
+     */
+    @State(Scope.Thread)
+    public static class Rooms {
+        @Param({ "1", "8", "64" })
+        public int items;
+
+        public Room itemRoom;
+        public List<Item> itemList;
+
+        @Setup
+        public void setup() throws Exception {
+            UniverseFixtures u = new UniverseFixtures();
+            itemRoom = u.roomWithItems(items);
+            itemList = u.items(items);
+        }
+    }
+
+    /**
+     * A room with an exit in every direction.
+     */
+    @State(Scope.Thread)
+    public static class Exits {
+        public Room exitRoom;
+
+        @Setup
+        public void setup() throws Exception {
+            exitRoom = new UniverseFixtures().roomWithAllExits();
+        }
+    }
+
+    @Benchmark
+    public String prettify(Prettify s) {
+        return s.narrator.prettify(s.input);
+    }
+
+    @Benchmark
+    public String narrateSay(Say s) {
+        return s.narrator.narrateSay("Alexander", s.message);
+    }
+
+    /*
+     * Rooms remember their descriptions until they change, so describing
+     * the same room again is a lookup. The "Uncached" benchmarks invalidate
+     * the memo first, to measure the cost of building the description.
+     */
+
+    @Benchmark
+    public String describeItems(Rooms s) {
+        return DungeonNarrator.describeItems(s.itemRoom);
+    }
+
+    @Benchmark
+    public String describeItemsUncached(Rooms s) {
+        s.itemRoom.itemsDescription.invalidate();
+        return DungeonNarrator.describeItems(s.itemRoom);
+    }
+
+    @Benchmark
+    public String describeExits(Exits s) {
+        return DungeonNarrator.describeExits(s.exitRoom);
+    }
+
+    @Benchmark
+    public String describeExitsUncached(Exits s) {
+        s.exitRoom.exitsDescription.invalidate();
+        return DungeonNarrator.describeExits(s.exitRoom);
+    }
+
+    @Benchmark
+    public String toNaturalListWithArticles(Rooms s) {
+        return DungeonNarrator.toNaturalListWithArticles(s.itemList);
+    }
+}
@@ -0,0 +1,128 @@
+package com.abreen.dungeon.bench;
+
+import java.io.*;
+import java.util.*;
+
+import com.abreen.dungeon.DungeonServer;
+import com.abreen.dungeon.model.*;
+import com.abreen.dungeon.state.DayPart;
+import com.abreen.dungeon.state.Weather;
+import com.abreen.dungeon.worker.DungeonUniverse;
+
+/**
+ * Realistic inputs for the benchmarks, taken from the default universe file
+ * rather than made up, so that the lengths of the strings and the
+ * punctuation in them are those the narrator sees in a game. The file is
+ * read with the server's own loader.
+ */
+final class UniverseFixtures {
+    static final String UNIVERSE_FILE = DungeonServer.YAML_PATH
+            + DungeonServer.DEFAULT_UNIVERSE_FILE;
+
+    /*
+     * In the order in which the universe holds them
+     */
+    final List<Room> rooms = new ArrayList<Room>();
+    final List<String> descriptions = new ArrayList<String>();
+    final List<String> itemNames = new ArrayList<String>();
+
+    /*
+     * The sentences of all the descriptions, in order
+     */
+    final List<String> sentences = new ArrayList<String>();
+
+    UniverseFixtures() throws Exception {
+        Reader in = new InputStreamReader(new FileInputStream(UNIVERSE_FILE),
+                "UTF-8");
+
+        DungeonUniverse u;
+        try {
+            u = DungeonServer.loadUniverse(in);
+        } finally {
+            in.close();
+        }
+
+        /*
+         * The server does not make the items in the file, so items are
+         * named after the rooms.
+         */
+        Iterator<Room> it = u.getRooms();
+        while (it.hasNext()) {
+            Room r = it.next();
+            rooms.add(r);
+            descriptions.add(r.getDescription().trim());
+            itemNames.add(r.getName());
+        }
+
+        for (String desc : descriptions)
+            for (String s : desc.split("(?<=[.!?])\\s+"))
+                sentences.add(s);
+    }
+
+    /**
+     * Returns a new room named after the first room in the universe, with
+     * the specified number of items in it. Since a room holds only one item
+     * of each name, names are numbered once they have all been used.
+     */
+    Room roomWithItems(int count) {
+        Room first = rooms.get(0);
+        Room r = new Room(first.getID() + "_items", first.getName(),
+                first.getDescription(), emptyDetails());
+
+        for (Item i : items(count))
+            r.addItem(i);
+
+        return r;
+    }
+
+    /**
+     * Returns a new room with an exit in every direction, each leading to a
+     * room in the universe.
+     */
+    Room roomWithAllExits() {
+        Room first = rooms.get(0);
+        Room r = new Room(first.getID() + "_exits", first.getName(),
+                first.getDescription(), emptyDetails());
+
+        Direction[] dirs = Direction.values();
+        for (int i = 0; i < dirs.length; i++)
+            r.addExit(dirs[i], rooms.get(i % rooms.size()));
+
+        return r;
+    }
+
+    List<Item> items(int count) {
+        int n = itemNames.size();
+        List<Item> list = new ArrayList<Item>(count);
+
+        for (int i = 0; i < count; i++) {
+            String name = itemNames.get(i % n);
+            if (i >= n)
+                name += " " + (i / n + 1);
+
+            list.add(new Item(name, "Found in the " + name + ".", true));
+        }
+
+        return list;
+    }
+
+    /**
+     * Returns the specified number of sentences from the descriptions as one
+     * message, starting over from the first if there are too few.
+     */
+    String message(int count) {
+        StringBuilder buf = new StringBuilder();
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                buf.append(' ');
+            buf.append(sentences.get(i % sentences.size()));
+        }
+
+        return buf.toString();
+    }
+
+    private static String[][] emptyDetails() {
+        return new String[DayPart.values().length][Weather.values().length];
+    }
+}
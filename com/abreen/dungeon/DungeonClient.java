@@ -4,6 +4,7 @@ import java.io.*;
 import java.net.*;
 import java.util.*;
 
+import com.abreen.dungeon.worker.ClientWriter;
 import com.abreen.dungeon.worker.DungeonDispatcher;
 import com.abreen.dungeon.worker.DungeonProtocol;
 import com.googlecode.lanterna.TerminalPosition;
@@ -14,6 +15,7 @@ import com.googlecode.lanterna.input.KeyStroke;
 import com.googlecode.lanterna.input.KeyType;
 import com.googlecode.lanterna.screen.Screen;
 import com.googlecode.lanterna.screen.TerminalScreen;
+import com.googlecode.lanterna.terminal.ResizeListener;
 import com.googlecode.lanterna.terminal.Terminal;
 import com.googlecode.lanterna.terminal.ansi.UnixTerminal;
 
@@ -68,8 +70,9 @@ public class DungeonClient {
         // send user name
         out.println(name);
 
-        // start display thread
+        // start display thread, which also reports the terminal's width
         DungeonDisplayThread disp = new DungeonDisplayThread(out);
+        disp.reportWidth();
         disp.start();
 
         try {
@@ -151,6 +154,12 @@ class DungeonDisplayThread extends Thread {
             this.rows = size.getRows();
             this.columns = size.getColumns();
             
+            t.addResizeListener(new ResizeListener() {
+                public void onResized(Terminal t, TerminalSize size) {
+                    resize(size);
+                }
+            });
+            
         } catch (IOException e) {
             System.err.println("DungeonClient: failed to get control of " +
                     "terminal");
@@ -166,38 +175,57 @@ class DungeonDisplayThread extends Thread {
         this.historyIndex = -1;
     }
 
+    /*
+     * Tells the server how wide the terminal is, so that it can wrap
+     * messages before sending them (or not, if the terminal is too narrow).
+     */
+    public synchronized void reportWidth() {
+        int width = Math.min(columns, ClientWriter.MAX_WIDTH);
+        if (width < ClientWriter.MIN_WIDTH)
+            width = ClientWriter.UNKNOWN_WIDTH;
+        
+        toServer.println(DungeonProtocol.Action.WIDTH.getName() + " " + width);
+    }
+    
+    /*
+     * Called when the terminal is resized.
+     */
+    private synchronized void resize(TerminalSize size) {
+        this.rows = size.getRows();
+        this.columns = size.getColumns();
+        
+        screen.doResizeIfNecessary();
+        reportWidth();
+        
+        drawMessages();
+        drawPrompt();
+        refresh();
+    }
+
     /*
      * Called when the main thread gets a new message from the server.
+     * Messages arrive already wrapped to the width reported to the server,
+     * so lines are normally kept as they are; only a line that is still too
+     * wide (e.g., one sent before a resize was reported) is wrapped here.
      */
     public synchronized void update(char[] buf, int len) throws IOException {
-        String s = String.valueOf(buf, 0, len);
-        String[] lines = s.split("\n");
+        int start = 0;
         
-        // whether this line starts with DungeonDispatcher.CHEVRONS
-        boolean isSpecial = false;
-        
-        for (String line : lines) {
-            isSpecial = line.indexOf(DungeonDispatcher.CHEVRONS) == 0;
-            String[] tokens = line.split("\\s");
-            int token = 0;
+        while (start < len) {
+            int end = start;
+            while (end < len && buf[end] != '\n')
+                end++;
             
-            int prefixLength = 0;
-            if (isSpecial)
-                prefixLength = DungeonDispatcher.CHEVRONS.length();
+            String line = String.valueOf(buf, start, end - start);
             
-            String newLine = "";
+            if (line.length() <= columns)
+                this.lines.addFirst(line);
+            else
+                for (String part : DungeonDispatcher.wrap(line,
+                        Math.max(columns, 1)).split("\n"))
+                    this.lines.addFirst(part);
             
-            while (token < tokens.length) {
-                do {
-                    if (newLine.length() + tokens[token].length() + 1 > columns)
-                        break;
-                    
-                    newLine += tokens[token++] + " ";
-                } while (newLine.length() < columns && token < tokens.length);
-                
-                this.lines.addFirst(newLine);
-                newLine = repeat(" ", prefixLength);
-            }
+            start = end + 1;
         }
         
         drawMessages();
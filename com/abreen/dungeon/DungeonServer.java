@@ -6,10 +6,12 @@ import java.net.*;
 
 import com.abreen.dungeon.state.DungeonGameTick;
 import com.abreen.dungeon.state.DayPart;
+import com.abreen.dungeon.state.DetailFallback;
 import com.abreen.dungeon.state.Weather;
 import com.abreen.dungeon.util.*;
 import com.abreen.dungeon.worker.*;
 import com.abreen.dungeon.model.*;
+import com.abreen.dungeon.random.Randomness;
 
 import org.yaml.snakeyaml.*;
 
@@ -18,21 +20,24 @@ public class DungeonServer {
     public static final String CONFIGURATION_FILE = "config.yml";
     public static final String YAML_PATH = "yaml" + File.separator;
 
-    private static Yaml yamlInstance;
+    private static Yaml yamlInstance = new Yaml();
 
     public static DungeonUniverse universe;
     public static DungeonDispatcher events;
     public static DungeonGameTick tick;
     public static DungeonNarrator narrator;
 
+    /* Set from the preamble, but used after the universe is loaded */
+    private static DungeonGameTick.Policy tickPolicy =
+            DungeonGameTick.DEFAULT_POLICY;
+    private static String phrasebook = DungeonNarrator.DEFAULT_PHRASEBOOK;
+
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public static void main(String[] args) throws IOException {
         boolean useArguments = false;
         Map config = null;
 
         try {
-            yamlInstance = new Yaml();
-
             /*
              * Try to load configuration file
              */
@@ -87,197 +92,7 @@ public class DungeonServer {
                 universeFile = new FileReader(YAML_PATH + config.get("world")
                         + ".universe.yml");
 
-            Object[] docs = new Object[3];
-            Map<String, Object> preamble = null;
-            Map<String, Map<String, Object>> rooms = null, items = null;
-
-            try {
-                System.out.println("\tchecking universe file");
-
-                int i = 0;
-                for (Object o : yamlInstance.loadAll(universeFile))
-                    docs[i++] = o;
-
-                preamble = (Map<String, Object>) docs[0];
-                rooms = (Map<String, Map<String, Object>>) docs[1];
-                items = (Map<String, Map<String, Object>>) docs[2];
-
-                if (preamble == null || rooms == null || items == null)
-                    throw new NullPointerException();
-
-            } catch (ArrayIndexOutOfBoundsException e) {
-                System.err.println("DungeonServer: error parsing universe " +
-                        "file: too many documents in universe file");
-                System.exit(3);
-            } catch (NullPointerException e) {
-                System.err.println("DungeonServer: error parsing universe " +
-                        "file: too few documents in universe file");
-                System.exit(3);
-            }
-
-            /*
-             * Used after parsing rooms to set universe parameters
-             */
-            boolean doWeather = false;
-            String spawnRoomID = null;
-            int timescale = -1;
-            try {
-                System.out.println("\treading preamble");
-
-                /*
-                 * Load universe parameters from the preamble
-                 */
-                doWeather = (Boolean) validateAndGet(preamble, "weather",
-                        Boolean.class);
-
-                spawnRoomID = (String) validateAndGet(preamble, "spawn",
-                        String.class);
-                
-                timescale = (Integer) validateAndGet(preamble, "timescale",
-                        Integer.class);
-
-            } catch (Exception e) {
-                System.err.println("DungeonServer: failed parsing preamble ("
-                        + e.getMessage() + ")");
-                System.exit(4);
-            }
-
-            /*
-             * Loop through room definitions in universe file
-             */
-
-            /**
-             * This hash map is used to resolve references from one room to
-             * another. Each time a room is parsed, it is added to this map, and
-             * henceforth back references to the newly added room will be
-             * resolved by checking this map.
-             */
-            HashMap<String, Room> knownRooms = new HashMap<String, Room>();
-
-            /**
-             * This list is maintained to easily check at the end of parsing if
-             * there are still references to unseen rooms.
-             */
-            ArrayList<String> unseenRooms = new ArrayList<String>();
-
-            /**
-             * This is a list of triples (A, B, C) such that A is a room
-             * waiting for a reference to another room, C, through a direction
-             * B. For A and B, the string ID of the rooms are used (the same
-             * key used in the knownRooms hash map). This list is used whenever
-             * a room's exit references cannot actually be resolved because the
-             * destination room has not yet been parsed. At the end of parsing,
-             * as long as the unseenRooms list is empty, this list is traversed
-             * to resolve the remaining references.
-             */
-            ArrayList<Triple<String, Direction, String>> unresolved;
-            unresolved =
-                    new ArrayList<Triple<String, Direction, String>>();
-
-            String thisRoomID = null;
-            try {
-                System.out.println("\tparsing rooms");
-
-                for (Map.Entry<String, Map<String, Object>> m :
-                        rooms.entrySet())
-                {
-                    thisRoomID = m.getKey();
-                    Map<String, Object> thisMap = m.getValue();
-
-                    String roomName = (String) validateAndGet(thisMap, "name",
-                            String.class);
-
-                    String description = (String) validateAndGet(thisMap,
-                            "description", String.class);
-                    
-                    Hashtable<Pair<DayPart, Weather>, String> details;
-                    details = getDetails(thisMap);
-
-                    Room r = new Room(roomName, description, details);
-
-                    if (thisMap.containsKey("neverUseArticle")) {
-                        boolean neverUseArticle = (Boolean) validateAndGet(
-                                thisMap, "neverUseArticle", Boolean.class);
-
-                        r.setNeverUseArticle(neverUseArticle);
-                    }
-
-                    if (unseenRooms.contains(thisRoomID))
-                        unseenRooms.remove(thisRoomID);
-
-                    knownRooms.put(thisRoomID, r);
-
-                    /*
-                     * Process exits out of this room
-                     */
-                    Map<String, String> exits = (Map) validateAndGet(thisMap,
-                            "exits", Map.class);
-
-                    for (Map.Entry<String, String> exit : exits.entrySet()) {
-                        String thisDirection = exit.getKey();
-                        String toRoomID = exit.getValue();
-
-                        /*
-                         * Verify the direction from the file
-                         */
-                        Direction dir;
-                        dir = Direction.fromString(thisDirection);
-                        if (dir == null)
-                            throw new InvalidDirectionException(thisDirection);
-
-                        /*
-                         * Look up the destination room in the hash map
-                         */
-                        if (knownRooms.containsKey(toRoomID))
-                            r.addExit(dir, knownRooms.get(toRoomID));
-                        else {
-                            if (!unseenRooms.contains(toRoomID))
-                                unseenRooms.add(toRoomID);
-
-                            Triple<String, Direction, String> t;
-                            t = new Triple<String, Direction,
-                                    String>(thisRoomID, dir, toRoomID);
-                            unresolved.add(t);
-                        }
-
-                    }
-
-                }
-            } catch (Exception e) {
-                System.err.println("DungeonServer: failed parsing room '"
-                        + thisRoomID + "' (" + e.getMessage() + ")");
-                System.exit(4);
-            }
-
-            if (!unseenRooms.isEmpty())
-                throw new UnresolvedReferenceException(unseenRooms);
-
-            /*
-             * Invariant: There were no references to undefined rooms in the
-             * file. Invariant: All the rooms in the file have been
-             * instantiated.
-             * 
-             * All rooms in the universe file have been parsed, but there may
-             * still be exits waiting to be added because their destination was
-             * not yet parsed at the time. Now loop through the unresolved list
-             * to set them up.
-             */
-            for (Triple<String, Direction, String> t : unresolved) {
-                Room fromRoom = knownRooms.get(t.first);
-                Room toRoom = knownRooms.get(t.third);
-                Direction dir = t.second;
-
-                fromRoom.addExit(dir, toRoom);
-            }
-
-            /*
-             * Invariant: All exits in the file have been set up among the
-             * rooms.
-             */
-
-            Room spawnRoom = knownRooms.get(spawnRoomID);
-            universe = new DungeonUniverse(spawnRoom, doWeather, timescale,
-                    knownRooms.values());
+            universe = loadUniverse(universeFile);
 
             universeFile.close();
 
@@ -289,11 +104,13 @@ public class DungeonServer {
 
         System.out.println("loaded universe");
 
-        /* Start narrator */
+        /* Start narrator, loading its phrasebook now rather than mid-game */
         try {
-            narrator = new DungeonNarrator();
+            narrator = new DungeonNarrator(phrasebook);
+            narrator.getPhrasebook();
         } catch (Exception e) {
-            System.err.println("DungeonServer: failed starting narrator");
+            System.err.println("DungeonServer: failed starting narrator ("
+                    + e.getMessage() + ")");
             System.exit(3);
         }
 
@@ -301,7 +118,7 @@ public class DungeonServer {
         
         /* Start the game tick */
         try {
-            tick = new DungeonGameTick();
+            tick = new DungeonGameTick(tickPolicy);
             tick.start();
         } catch (Exception e) {
             System.err.println("DungeonServer: failed starting game tick");
@@ -337,6 +154,306 @@ public class DungeonServer {
 
     }
 
+    /**
+     * Reads a universe from the specified universe file. Settings in the
+     * preamble that belong to other parts of the server (the tick policy
+     * and the phrasebook) are kept for main() to use. Exits if the file is
+     * malformed.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static DungeonUniverse loadUniverse(Reader universeFile)
+        throws IOException, UnresolvedReferenceException
+    {
+        DetailFallback[] detailFallback = DetailFallback.DEFAULT_CHAIN;
+
+        Object[] docs = new Object[3];
+        Map<String, Object> preamble = null;
+        Map<String, Map<String, Object>> rooms = null, items = null;
+
+        try {
+            System.out.println("\tchecking universe file");
+
+            int i = 0;
+            for (Object o : yamlInstance.loadAll(universeFile))
+                docs[i++] = o;
+
+            preamble = (Map<String, Object>) docs[0];
+            rooms = (Map<String, Map<String, Object>>) docs[1];
+            items = (Map<String, Map<String, Object>>) docs[2];
+
+            if (preamble == null || rooms == null || items == null)
+                throw new NullPointerException();
+
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.err.println("DungeonServer: error parsing universe " +
+                    "file: too many documents in universe file");
+            System.exit(3);
+        } catch (NullPointerException e) {
+            System.err.println("DungeonServer: error parsing universe " +
+                    "file: too few documents in universe file");
+            System.exit(3);
+        }
+
+        /*
+         * Used after parsing rooms to set universe parameters
+         */
+        boolean doWeather = false;
+        String spawnRoomID = null;
+        int timescale = -1;
+        int yellDistance = DungeonUniverse.DEFAULT_YELL_DISTANCE;
+        try {
+            System.out.println("\treading preamble");
+
+            /*
+             * Load universe parameters from the preamble
+             */
+            doWeather = (Boolean) validateAndGet(preamble, "weather",
+                    Boolean.class);
+
+            spawnRoomID = (String) validateAndGet(preamble, "spawn",
+                    String.class);
+            
+            timescale = (Integer) validateAndGet(preamble, "timescale",
+                    Integer.class);
+
+            if (preamble.containsKey("yellDistance"))
+                yellDistance = (Integer) validateAndGet(preamble,
+                        "yellDistance", Integer.class);
+
+            if (preamble.containsKey("tickPolicy")) {
+                String policy = (String) validateAndGet(preamble,
+                        "tickPolicy", String.class);
+
+                tickPolicy = DungeonGameTick.Policy.fromString(policy);
+                if (tickPolicy == null)
+                    throw new IllegalArgumentException("'" + policy
+                            + "' is not a valid tick policy");
+            }
+
+            if (preamble.containsKey("detailFallback")) {
+                List<?> chain = (List<?>) validateAndGet(preamble,
+                        "detailFallback", List.class);
+
+                detailFallback = new DetailFallback[chain.size()];
+                for (int i = 0; i < chain.size(); i++) {
+                    Object o = chain.get(i);
+                    detailFallback[i] = DetailFallback.fromString(
+                            String.valueOf(o));
+
+                    if (detailFallback[i] == null)
+                        throw new IllegalArgumentException("'" + o
+                                + "' is not a valid detail fallback");
+                }
+            }
+
+            if (preamble.containsKey("phrases")) {
+                phrasebook = (String) validateAndGet(preamble, "phrases",
+                        String.class);
+            }
+
+            /* Must be seeded before anything random is made */
+            if (preamble.containsKey("seed")) {
+                int seed = (Integer) validateAndGet(preamble, "seed",
+                        Integer.class);
+                Randomness.setSeed(seed);
+            }
+
+        } catch (Exception e) {
+            System.err.println("DungeonServer: failed parsing preamble ("
+                    + e.getMessage() + ")");
+            System.exit(4);
+        }
+
+        /*
+         * Loop through room definitions in universe file
+         */
+
+        /**
+         * This hash map is used to resolve references from one room to
+         * another. Each time a room is parsed, it is added to this map, and
+         * henceforth back references to the newly added room will be
+         * resolved by checking this map.
+         */
+        HashMap<String, Room> knownRooms = new HashMap<String, Room>();
+
+        /**
+         * Zones are created the first time a room mentions them. Rooms
+         * that do not mention a zone are put in the default zone.
+         */
+        LinkedHashMap<String, Zone> knownZones =
+                new LinkedHashMap<String, Zone>();
+
+        /**
+         * Regions are created the same way as zones. Each region has
+         * its own weather.
+         */
+        LinkedHashMap<String, Region> knownRegions =
+                new LinkedHashMap<String, Region>();
+
+        /**
+         * This list is maintained to easily check at the end of parsing if
+         * there are still references to unseen rooms.
+         */
+        ArrayList<String> unseenRooms = new ArrayList<String>();
+
+        /**
+         * This is a list of triples (A, B, C) such that A is a room
+         * waiting for a reference to another room, C, through a direction
+         * B. For A and B, the string ID of the rooms are used (the same
+         * key used in the knownRooms hash map). This list is used whenever
+         * a room's exit references cannot actually be resolved because the
+         * destination room has not yet been parsed. At the end of parsing,
+         * as long as the unseenRooms list is empty, this list is traversed
+         * to resolve the remaining references.
+         */
+        ArrayList<Triple<String, Direction, String>> unresolved;
+        unresolved =
+                new ArrayList<Triple<String, Direction, String>>();
+
+        String thisRoomID = null;
+        try {
+            System.out.println("\tparsing rooms");
+
+            for (Map.Entry<String, Map<String, Object>> m :
+                    rooms.entrySet())
+            {
+                thisRoomID = m.getKey();
+                Map<String, Object> thisMap = m.getValue();
+
+                String roomName = (String) validateAndGet(thisMap, "name",
+                        String.class);
+
+                String description = (String) validateAndGet(thisMap,
+                        "description", String.class);
+                
+                String[][] details = DetailFallback.fill(
+                        getDetails(thisMap), detailFallback);
+
+                Room r = new Room(thisRoomID, roomName, description,
+                        details);
+
+                if (thisMap.containsKey("neverUseArticle")) {
+                    boolean neverUseArticle = (Boolean) validateAndGet(
+                            thisMap, "neverUseArticle", Boolean.class);
+
+                    r.setNeverUseArticle(neverUseArticle);
+                }
+
+                String zoneName = Zone.DEFAULT_NAME;
+                if (thisMap.containsKey("zone"))
+                    zoneName = (String) validateAndGet(thisMap, "zone",
+                            String.class);
+
+                Zone zone = knownZones.get(zoneName);
+                if (zone == null) {
+                    zone = new Zone(zoneName, knownZones.size());
+                    knownZones.put(zoneName, zone);
+                }
+
+                zone.addRoom(r);
+
+                String regionName = Region.DEFAULT_NAME;
+                if (thisMap.containsKey("region"))
+                    regionName = (String) validateAndGet(thisMap,
+                            "region", String.class);
+
+                Region region = knownRegions.get(regionName);
+                if (region == null) {
+                    region = new Region(regionName);
+                    knownRegions.put(regionName, region);
+                }
+
+                region.addRoom(r);
+
+                if (thisMap.containsKey("outside")) {
+                    boolean outside = (Boolean) validateAndGet(thisMap,
+                            "outside", Boolean.class);
+
+                    r.setOutside(outside);
+                }
+
+                if (unseenRooms.contains(thisRoomID))
+                    unseenRooms.remove(thisRoomID);
+
+                knownRooms.put(thisRoomID, r);
+
+                /*
+                 * Process exits out of this room
+                 */
+                Map<String, String> exits = (Map) validateAndGet(thisMap,
+                        "exits", Map.class);
+
+                for (Map.Entry<String, String> exit : exits.entrySet()) {
+                    String thisDirection = exit.getKey();
+                    String toRoomID = exit.getValue();
+
+                    /*
+                     * Verify the direction from the file
+                     */
+                    Direction dir;
+                    dir = Direction.fromString(thisDirection);
+                    if (dir == null)
+                        throw new InvalidDirectionException(thisDirection);
+
+                    /*
+                     * Look up the destination room in the hash map
+                     */
+                    if (knownRooms.containsKey(toRoomID))
+                        r.addExit(dir, knownRooms.get(toRoomID));
+                    else {
+                        if (!unseenRooms.contains(toRoomID))
+                            unseenRooms.add(toRoomID);
+
+                        Triple<String, Direction, String> t;
+                        t = new Triple<String, Direction,
+                                String>(thisRoomID, dir, toRoomID);
+                        unresolved.add(t);
+                    }
+
+                }
+
+            }
+        } catch (Exception e) {
+            System.err.println("DungeonServer: failed parsing room '"
+                    + thisRoomID + "' (" + e.getMessage() + ")");
+            System.exit(4);
+        }
+
+        if (!unseenRooms.isEmpty())
+            throw new UnresolvedReferenceException(unseenRooms);
+
+        /*
+         * Invariant: There were no references to undefined rooms in the
+         * file. Invariant: All the rooms in the file have been
+         * instantiated.
+         * 
+         * All rooms in the universe file have been parsed, but there may
+         * still be exits waiting to be added because their destination was
+         * not yet parsed at the time. Now loop through the unresolved list
+         * to set them up.
+         */
+        for (Triple<String, Direction, String> t : unresolved) {
+            Room fromRoom = knownRooms.get(t.first);
+            Room toRoom = knownRooms.get(t.third);
+            Direction dir = t.second;
+
+            fromRoom.addExit(dir, toRoom);
+        }
+
+        /*
+         * Invariant: All exits in the file have been set up among the
+         * rooms.
+         */
+
+        Room spawnRoom = knownRooms.get(spawnRoomID);
+        DungeonUniverse u = new DungeonUniverse(spawnRoom, doWeather,
+                timescale, knownRooms.values(), knownZones.values(),
+                knownRegions.values());
+        u.setYellDistance(yellDistance);
+
+        return u;
+    }
+
     private static String usage() {
         return "usage: java DungeonServer <port>";
     }
@@ -383,14 +500,16 @@ public class DungeonServer {
             return o;
     }
     
+    /*
+     * Returns a table of the details given in a room's "detail" mapping,
+     * indexed by day part, then weather, ordinal. Missing details are null.
+     */
     @SuppressWarnings({ "unchecked", "rawtypes" })
-    private static
-    Hashtable<Pair<DayPart, Weather>, String> getDetails(
-            Map<String, Object> map)
+    private static String[][] getDetails(Map<String, Object> map)
         throws MissingMappingException, UnexpectedTypeException
     {
-        Hashtable<Pair<DayPart, Weather>, String> details = 
-                new Hashtable<Pair<DayPart, Weather>, String>();
+        String[][] details =
+                new String[DayPart.values().length][Weather.values().length];
         
         Map<String, Map<String, String>> timesOfDay =
                 (Map) validateAndGet(map, "detail", Map.class);
@@ -406,6 +525,9 @@ public class DungeonServer {
                 half = DayPart.DAY;
             else if (key.equals("night"))
                 half = DayPart.NIGHT;
+            else
+                throw new IllegalArgumentException("'" + key
+                        + "' is not a valid part of the day");
             
             // map of weather strings to descriptions ("fog" -> ...)
             Map<String, String> weatherMap = todMapping.getValue();
@@ -415,11 +537,11 @@ public class DungeonServer {
                 String description = wMapping.getValue();
                 
                 Weather w = Weather.fromString(weatherKey);
+                if (w == null)
+                    throw new IllegalArgumentException("'" + weatherKey
+                            + "' is not a valid weather");
                 
-                Pair<DayPart, Weather> p =
-                        new Pair<DayPart, Weather>(half, w);
-                
-                details.put(p, description);
+                details[half.ordinal()][w.ordinal()] = description;
             }
         }
         
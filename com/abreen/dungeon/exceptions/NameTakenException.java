@@ -0,0 +1,9 @@
+package com.abreen.dungeon.exceptions;
+
+/*
+ * Thrown when a player attempts to connect with the name of a connected
+ * player, or with a name that differs from it only in case.
+ */
+public class NameTakenException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+}
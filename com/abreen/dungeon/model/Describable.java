@@ -1,5 +1,7 @@
 package com.abreen.dungeon.model;
 
+import java.io.Serializable;
+
 /**
  * This abstract class contains fields and methods that aim to specify how to
  * getDescription an ingame object to a player. The class contains fields for an
@@ -25,7 +27,9 @@ package com.abreen.dungeon.model;
  *
  * @author Alexander Breen <alexander.breen@gmail.com>
  */
-public abstract class Describable {
+public abstract class Describable implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     public static final char[] VOWELS = { 'a', 'e', 'i', 'o', 'u' };
 
     /**
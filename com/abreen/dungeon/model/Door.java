@@ -3,6 +3,8 @@ package com.abreen.dungeon.model;
 import com.abreen.dungeon.exceptions.*;
 
 public class Door extends Space {
+    private static final long serialVersionUID = 1L;
+
     public static final String DEFAULT_NAME = "door";
     public static final String DEFAULT_DESCRIPTION = "A normal-looking door.";
 
@@ -18,7 +20,7 @@ public class Door extends Space {
     }
 
     public boolean keyFits(Key k) {
-        return k == this.key;
+        return this.key.matches(k);
     }
 
     public boolean isLocked() {
@@ -32,7 +34,7 @@ public class Door extends Space {
         if (this.locked)
             throw new AlreadyLockedException();
 
-        if (k != this.key)
+        if (!keyFits(k))
             throw new WrongKeyException();
 
         this.locked = true;
@@ -45,7 +47,7 @@ public class Door extends Space {
         if (!this.locked)
             throw new NotLockedException();
 
-        if (k != this.key)
+        if (!keyFits(k))
             throw new WrongKeyException();
 
         this.locked = false;
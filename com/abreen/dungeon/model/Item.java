@@ -1,6 +1,8 @@
 package com.abreen.dungeon.model;
 
 public class Item extends Describable {
+    private static final long serialVersionUID = 1L;
+
     public static final boolean DEFAULT_CARRYABILITY = false;
 
     protected boolean carryable;
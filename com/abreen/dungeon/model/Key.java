@@ -1,7 +1,34 @@
 package com.abreen.dungeon.model;
 
+import java.util.UUID;
+
 public class Key extends Item {
-    public Key(String n, String d) {
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * Identifies the key across serialization, since a key that is saved
+     * and restored is no longer the object its doors were made with
+     */
+    private String id;
+
+    public String getID() {
+        return this.id;
+    }
+
+    public boolean matches(Key k) {
+        return k != null && this.id.equals(k.id);
+    }
+
+    public Key(String id, String n, String d) {
         super(n, d, true);
+
+        if (id == null || id.isEmpty())
+            throw new IllegalArgumentException("key must have an ID");
+
+        this.id = id;
+    }
+
+    public Key(String n, String d) {
+        this(UUID.randomUUID().toString(), n, d);
     }
 }
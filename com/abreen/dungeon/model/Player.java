@@ -3,15 +3,35 @@ package com.abreen.dungeon.model;
 import java.util.*;
 import java.io.*;
 
+import com.abreen.dungeon.DungeonServer;
 import com.abreen.dungeon.exceptions.*;
 import com.abreen.dungeon.state.*;
+import com.abreen.dungeon.util.Memo;
 
 public class Player extends Describable implements Serializable, Stateful {
     private static final long serialVersionUID = 1L;
     
-    private Room here;
+    /*
+     * The room is not serialized with the player; only its ID is, so that
+     * the player can be placed back into whichever universe restores them.
+     */
+    private transient Room here;
+    private String roomID;
+    
+    /**
+     * The universe's tick at which the player was last serialized.
+     */
+    private long savedTick;
+    
     private Hashtable<String, Item> inventory;
-    private PrintWriter out;
+    
+    /**
+     * The narrator's list of this player's inventory, redone when it
+     * changes.
+     */
+    public final Memo<String> inventoryDescription = new Memo<String>();
+    
+    private transient PrintWriter out;
     
     public final PlayerState state;
 
@@ -46,6 +66,30 @@ public class Player extends Describable implements Serializable, Stateful {
         in.defaultReadObject();
         this.updateLastAction();
     }
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (this.here != null)
+            this.roomID = this.here.getID();
+        
+        this.savedTick = DungeonServer.universe.getTicks();
+        out.defaultWriteObject();
+    }
+    
+    /**
+     * Returns the ID of the room this player was in when they were last
+     * serialized, or null if they never were.
+     */
+    public String getSavedRoomID() {
+        return this.roomID;
+    }
+    
+    /**
+     * Returns the universe's tick at which this player was last serialized,
+     * or 0 if they never were.
+     */
+    public long getSavedTick() {
+        return this.savedTick;
+    }
 
     public Player(String name, Room spawn) {
         this.name = name;
@@ -83,7 +127,9 @@ public class Player extends Describable implements Serializable, Stateful {
         if (!this.inventory.contains(i))
             throw new NoSuchItemException();
 
-        return this.inventory.remove(i.getName().toLowerCase());
+        Item removed = this.inventory.remove(i.getName().toLowerCase());
+        this.inventoryDescription.invalidate();
+        return removed;
     }
 
     public Item dropFromInventoryByName(String name) throws NoSuchItemException {
@@ -92,11 +138,13 @@ public class Player extends Describable implements Serializable, Stateful {
         if (i == null)
             throw new NoSuchItemException();
 
+        this.inventoryDescription.invalidate();
         return i;
     }
 
     public void addToInventory(Item i) {
         this.inventory.put(i.getName().toLowerCase(), i);
+        this.inventoryDescription.invalidate();
     }
 
     public Item getFromInventoryByName(String name) throws NoSuchItemException {
@@ -145,8 +193,20 @@ public class Player extends Describable implements Serializable, Stateful {
     }
     
     public void tick() {
-        state.fatigue++;
-        state.hunger++;
-        state.thirst++;
+        advance(1);
+    }
+    
+    /**
+     * Advances the player's state and every stateful item they carry.
+     */
+    public void advance(long ticks) {
+        state.advance(ticks);
+        
+        Iterator<Item> items = getInventoryIterator();
+        while (items.hasNext()) {
+            Item i = items.next();
+            if (i instanceof Stateful)
+                ((Stateful) i).advance(ticks);
+        }
     }
 }
@@ -0,0 +1,92 @@
+package com.abreen.dungeon.model;
+
+import java.util.*;
+
+import com.abreen.dungeon.state.Weather;
+
+/**
+ * A group of rooms that share the same weather. Each region's weather
+ * changes on its own schedule, and a change is only narrated to players in
+ * the region's outdoor rooms.
+ *
+ * Regions are declared per room in the universe file with the "region" key.
+ * Rooms that do not declare a region belong to the default region.
+ */
+public class Region {
+    public static final String DEFAULT_NAME = "default";
+
+    private String name;
+    private volatile Weather weather;
+
+    private ArrayList<Room> rooms;
+
+    /*
+     * Computed from the rooms the first time it is needed. Rooms must not
+     * be added after that.
+     */
+    private volatile Room[] outdoorRooms;
+
+    public Region(String name) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("region must have a name");
+
+        this.name = name;
+        this.weather = Weather.CLEAR;
+        this.rooms = new ArrayList<Room>();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public Weather getWeather() {
+        return this.weather;
+    }
+
+    public void setWeather(Weather w) {
+        this.weather = w;
+    }
+
+    /**
+     * Adds the room to this region. A room belongs to exactly one region.
+     */
+    public void addRoom(Room r) {
+        if (r.getRegion() != null)
+            throw new IllegalArgumentException("room already in a region");
+
+        this.rooms.add(r);
+        r.setRegion(this);
+    }
+
+    public Iterator<Room> getRooms() {
+        return this.rooms.iterator();
+    }
+
+    public int getNumberOfRooms() {
+        return this.rooms.size();
+    }
+
+    /**
+     * Returns the rooms of this region that are outside. The returned array
+     * is shared and must not be modified.
+     */
+    public Room[] getOutdoorRooms() {
+        Room[] rs = this.outdoorRooms;
+
+        if (rs == null) {
+            ArrayList<Room> outside = new ArrayList<Room>();
+            for (Room r : this.rooms)
+                if (r.isOutside())
+                    outside.add(r);
+
+            rs = outside.toArray(new Room[outside.size()]);
+            this.outdoorRooms = rs;
+        }
+
+        return rs;
+    }
+
+    public String toString() {
+        return this.name;
+    }
+}
@@ -1,22 +1,68 @@
 package com.abreen.dungeon.model;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import com.abreen.dungeon.exceptions.*;
 import com.abreen.dungeon.state.*;
 import com.abreen.dungeon.util.*;
 
 public class Room extends Space {
+    private static final long serialVersionUID = 1L;
+
     public static final int DEFAULT_ITEMS_SIZE = 11;
     public static final int DEFAULT_PLAYERS_SIZE = 36;
 
-    private Hashtable<String, Item> items;
-    private Hashtable<String, Player> players;
+    /*
+     * These maps are concurrent so that rooms can be read (e.g., by a yell
+     * from a neighbouring zone) without holding this room's zone lock.
+     */
+    private ConcurrentHashMap<String, Item> items;
+    private ConcurrentHashMap<String, Player> players;
+    
+    /*
+     * Incremented whenever a player or item enters or leaves this room, so
+     * that descriptions of the room's contents can be cached.
+     */
+    private AtomicInteger version;
+    
+    /**
+     * The narrator's list of this room's items, redone when they change.
+     */
+    public final Memo<String> itemsDescription = new Memo<String>();
+    
+    /*
+     * Indexed by day part, then weather, ordinal. Missing details have
+     * already been filled in from the universe's fallbacks where possible.
+     */
+    private String[][] details;
+    
+    private Zone zone;
+    private Region region;
+    
+    /**
+     * Whether this room is open to the weather. Only players in outdoor
+     * rooms are told when their region's weather changes.
+     */
+    private boolean outside = true;
     
-    private Hashtable<Pair<DayPart, Weather>, String> details;
+    /**
+     * The string ID of this room from the universe file.
+     */
+    private String id;
+    
+    /*
+     * Computed from the exits the first time they are needed (normally when
+     * the universe is loaded). Exits must not change after that.
+     */
+    private transient volatile Room[] adjacent;
+    private transient volatile Room[][] neighbourhood;
 
     public void addItem(Item i) {
         this.items.put(i.getName().toLowerCase(), i);
+        this.itemsDescription.invalidate();
+        this.version.incrementAndGet();
     }
 
     public int getNumberOfItems() {
@@ -37,6 +83,8 @@ public class Room extends Space {
         if (i == null)
             throw new NoSuchItemException();
 
+        this.itemsDescription.invalidate();
+        this.version.incrementAndGet();
         return i;
     }
 
@@ -51,10 +99,12 @@ public class Room extends Space {
 
     public void addPlayer(Player p) {
         this.players.put(p.getName(), p);
+        this.version.incrementAndGet();
     }
 
     public void removePlayer(Player p) {
         this.players.remove(p.getName());
+        this.version.incrementAndGet();
     }
 
     public Iterator<Player> getPlayers() {
@@ -65,6 +115,14 @@ public class Room extends Space {
         return this.players.size();
     }
 
+    /**
+     * Returns a number that changes whenever a player or item enters or
+     * leaves this room.
+     */
+    public int getVersion() {
+        return this.version.get();
+    }
+
     /*
      * Adds a door between this room and 'dest'. Uses 'forward' as exit
      * direction from this room to the next room. Uses 'backward' as exit
@@ -97,51 +155,117 @@ public class Room extends Space {
 
     /**
      * Returns rooms connected to this room through an exit not blocked by a
-     * door.
+     * door. The array is shared, so callers must not modify it.
      * 
-     * @return An iterator over this room's adjacent rooms
+     * @return This room's adjacent rooms
      */
-    public Iterator<Room> getAdjacentRooms() {
-        ArrayList<Room> list = new ArrayList<Room>(DEFAULT_EXITS_SIZE);
-
-        Iterator<Map.Entry<Direction, Space>> it = this.getExitsIterator();
-
-        while (it.hasNext()) {
-            Map.Entry<Direction, Space> i = it.next();
-            Space val = i.getValue();
-
-            if (val instanceof Room)
-                list.add((Room) val);
+    public Room[] getAdjacentRooms() {
+        Room[] adj = this.adjacent;
+        
+        if (adj == null) {
+            ArrayList<Room> list = new ArrayList<Room>(DEFAULT_EXITS_SIZE);
+            
+            for (Space val : this.exits.values())
+                if (val instanceof Room && !list.contains(val))
+                    list.add((Room) val);
+            
+            adj = list.toArray(new Room[list.size()]);
+            this.adjacent = adj;
         }
-
-        return list.iterator();
-
+        
+        return adj;
     }
     
-    public String getDetail(DayPart h, Weather w) {
-        /**
-         * TODO Why can't I just do details.get(new Pair<>(...)) here?!
-         */
+    /**
+     * Returns the rooms at most the specified number of hops away from this
+     * room, grouped by distance: element 0 holds the adjacent rooms, element
+     * 1 the rooms two hops away, and so on. Each room appears only at its
+     * shortest distance, and this room is never included. The result is
+     * cached and shared, so callers must not modify it.
+     * 
+     * @param hops
+     *            The greatest distance to include
+     * @return An array of length hops, containing arrays of rooms
+     */
+    public Room[][] getNeighbourhood(int hops) {
+        Room[][] rings = this.neighbourhood;
         
-        for (Map.Entry<Pair<DayPart, Weather>, String> e : details.entrySet()) {
-            Pair<DayPart, Weather> pair = e.getKey();
-            String desc = e.getValue();
+        if (rings == null || rings.length != hops) {
+            rings = new Room[hops][];
+            
+            HashSet<Room> seen = new HashSet<Room>();
+            seen.add(this);
             
-            if (pair.first.equals(h) && pair.second.equals(w))
-                return desc;
+            Room[] frontier = { this };
+            for (int d = 0; d < hops; d++) {
+                ArrayList<Room> next = new ArrayList<Room>();
+                
+                for (Room r : frontier)
+                    for (Room adj : r.getAdjacentRooms())
+                        if (seen.add(adj))
+                            next.add(adj);
+                
+                frontier = next.toArray(new Room[next.size()]);
+                rings[d] = frontier;
+            }
+            
+            this.neighbourhood = rings;
         }
         
-        return null;
+        return rings;
+    }
+    
+    public String getID() {
+        return this.id;
+    }
+    
+    public Zone getZone() {
+        return this.zone;
+    }
+    
+    void setZone(Zone z) {
+        this.zone = z;
+    }
+    
+    public Region getRegion() {
+        return this.region;
+    }
+    
+    void setRegion(Region r) {
+        this.region = r;
+    }
+    
+    public boolean isOutside() {
+        return this.outside;
+    }
+    
+    public void setOutside(boolean b) {
+        this.outside = b;
+    }
+    
+    /**
+     * Returns this room's detail for the specified part of the day and
+     * weather, or null if the room has none.
+     */
+    public String getDetail(DayPart h, Weather w) {
+        return this.details[h.ordinal()][w.ordinal()];
     }
 
-    public Room(String n, String d,
-            Hashtable<Pair<DayPart, Weather>, String> details)
-    {
+    /**
+     * @param details
+     *            The room's details, indexed by day part, then weather,
+     *            ordinal
+     */
+    public Room(String id, String n, String d, String[][] details) {
         super(n, d);
+        this.id = id;
         this.details = details;
         
-        this.players = new Hashtable<String, Player>(Room.DEFAULT_PLAYERS_SIZE);
-        this.items = new Hashtable<String, Item>(Room.DEFAULT_ITEMS_SIZE);
+        this.players =
+                new ConcurrentHashMap<String, Player>(DEFAULT_PLAYERS_SIZE);
+        this.items =
+                new ConcurrentHashMap<String, Item>(DEFAULT_ITEMS_SIZE);
+        this.version = new AtomicInteger();
     }
     
     public String toString() {
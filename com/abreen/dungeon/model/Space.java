@@ -2,11 +2,19 @@ package com.abreen.dungeon.model;
 
 import java.util.*;
 import com.abreen.dungeon.exceptions.*;
+import com.abreen.dungeon.util.Memo;
 
 public abstract class Space extends Describable {
+    private static final long serialVersionUID = 1L;
+
     public static final int DEFAULT_EXITS_SIZE = 6;
 
     protected HashMap<Direction, Space> exits;
+    
+    /**
+     * The narrator's list of this space's exits, redone when they change.
+     */
+    public final Memo<String> exitsDescription = new Memo<String>();
 
     public void addExit(Direction direction, Space sp) {
         if (sp == null)
@@ -17,6 +25,7 @@ public abstract class Space extends Describable {
                     "already an exit in this direction");
 
         this.exits.put(direction, sp);
+        this.exitsDescription.invalidate();
     }
 
     public Iterator<Map.Entry<Direction, Space>> getExitsIterator() {
@@ -1,27 +1,67 @@
 package com.abreen.dungeon.model;
 
+import java.io.*;
+
 import com.abreen.dungeon.DungeonServer;
 import com.abreen.dungeon.state.Stateful;
 import com.abreen.dungeon.state.TimeOfDay;
+import com.abreen.dungeon.worker.DungeonUniverse;
 
+/**
+ * A watch shows the universe's time of day until its battery runs out, after
+ * which it shows the time at which it stopped. Rather than keeping and
+ * advancing its own copy of the time, a watch remembers the game tick at
+ * which it was made and works out its reading from the universe's time
+ * when it is looked at.
+ * 
+ * Since a watch follows the universe's clock, it is not registered with
+ * the game tick (see DungeonUniverse), and tick() does nothing. It is only
+ * advanced for time it spends outside the universe.
+ */
 public class Watch extends Item implements Stateful {
+    private static final long serialVersionUID = 1L;
+
     private static final long FULL_BATTERY = 0x1000000;
     
-    private final TimeOfDay tod;
-    private long battery;
+    /*
+     * The tick is only meaningful in the universe the watch is in, so the
+     * battery used so far is serialized instead.
+     */
+    private transient volatile long madeAt;
+    private long used;
     
     public Watch(String n, String d) {
         super(n, d, true);
-        this.tod = new TimeOfDay(DungeonServer.universe.tod);
-        this.battery = FULL_BATTERY;
+        this.madeAt = DungeonServer.universe.getTicks();
+    }
+    
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException
+    {
+        in.defaultReadObject();
+        this.madeAt = DungeonServer.universe.getTicks() - this.used;
+    }
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        this.used = DungeonServer.universe.getTicks() - this.madeAt;
+        out.defaultWriteObject();
     }
     
     public String getDescription() {
+        DungeonUniverse u = DungeonServer.universe;
+        
+        /*
+         * The universe's clock advances one second per tick, so a dead
+         * watch reads the current time less the ticks since it died.
+         */
+        long dead = u.getTicks() - madeAt - FULL_BATTERY;
+        TimeOfDay reading = u.tod.plusSeconds(dead > 0 ? -dead : 0);
+        
         StringBuilder buf = new StringBuilder(super.getDescription());
         buf.append(" It currently reads ");
-        buf.append(tod.to12hString());
+        buf.append(reading.to12hString());
         
-        if (battery == 0) {
+        if (dead >= 0) {
             buf.append(", but it seems like its battery is dead.");
         } else {
             buf.append(".");
@@ -30,11 +70,17 @@ public class Watch extends Item implements Stateful {
         return buf.toString();
     }
     
+    /*
+     * A watch's reading and battery already follow the universe's clock, so
+     * there is nothing to do.
+     */
     public void tick() {
-        if (battery <= 0)
-            return;
-        
-        battery--;
-        this.tod.addSeconds(1);
+    }
+    
+    /**
+     * Uses up the battery as if the specified number of ticks had passed.
+     */
+    public synchronized void advance(long ticks) {
+        this.madeAt -= ticks;
     }
 }
@@ -0,0 +1,82 @@
+package com.abreen.dungeon.model;
+
+import java.util.*;
+
+/**
+ * A group of rooms that share one lock. Actions whose effects stay inside a
+ * zone (speaking, taking and dropping items, and so on) synchronize on that
+ * zone only, so that players in different parts of a large universe are not
+ * all serialized behind the universe's monitor.
+ *
+ * Zones are declared per room in the universe file with the "zone" key.
+ * Rooms that do not declare a zone belong to the default zone.
+ */
+public class Zone {
+    public static final String DEFAULT_NAME = "default";
+
+    private String name;
+
+    /**
+     * Position of this zone in the universe's zone ordering. Whenever two
+     * zones must be locked at once, the zone with the lower index is
+     * locked first, so that two players moving in opposite directions
+     * cannot deadlock.
+     */
+    private int index;
+
+    private ArrayList<Room> rooms;
+
+    public Zone(String name, int index) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("zone must have a name");
+
+        this.name = name;
+        this.index = index;
+        this.rooms = new ArrayList<Room>();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Adds the room to this zone. A room belongs to exactly one zone.
+     */
+    public void addRoom(Room r) {
+        if (r.getZone() != null)
+            throw new IllegalArgumentException("room already in a zone");
+
+        this.rooms.add(r);
+        r.setZone(this);
+    }
+
+    public Iterator<Room> getRooms() {
+        return this.rooms.iterator();
+    }
+
+    public int getNumberOfRooms() {
+        return this.rooms.size();
+    }
+
+    /**
+     * Returns whichever of the two zones must be locked first.
+     */
+    public static Zone first(Zone a, Zone b) {
+        return a.index <= b.index ? a : b;
+    }
+
+    /**
+     * Returns whichever of the two zones must be locked second.
+     */
+    public static Zone second(Zone a, Zone b) {
+        return a.index <= b.index ? b : a;
+    }
+
+    public String toString() {
+        return this.name;
+    }
+}
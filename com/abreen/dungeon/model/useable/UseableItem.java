@@ -1,8 +1,16 @@
 package com.abreen.dungeon.model.useable;
 
+import java.io.*;
+
 import com.abreen.dungeon.model.Item;
 
 public class UseableItem extends Item implements Useable {
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * Serialized with the item, so it must be Serializable if the item is
+     * ever to be saved (e.g., when a player carrying it leaves)
+     */
     private Useable useMethodObject;
 
     public void setUseMethodObject(Useable u) {
@@ -16,6 +24,15 @@ public class UseableItem extends Item implements Useable {
         this.useMethodObject.use();
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (this.useMethodObject != null
+                && !(this.useMethodObject instanceof Serializable))
+            throw new NotSerializableException("method object of '"
+                    + this.getName() + "' is not serializable");
+
+        out.defaultWriteObject();
+    }
+
     public UseableItem(String n, String d) {
         super(n, d);
     }
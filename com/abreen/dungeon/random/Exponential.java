@@ -1,18 +1,20 @@
 package com.abreen.dungeon.random;
 
-import java.util.Random;
-
 public class Exponential extends Distribution {
     private double lambda;
-    private Random rand;
+    private Randomness.Stream rand;
 
     public Exponential(double l) {
+        this(l, Randomness.stream("exponential"));
+    }
+
+    public Exponential(double l, Randomness.Stream s) {
         this.lambda = l;
-        this.rand = new Random();
+        this.rand = s;
     }
 
     public double next() {
-        double next = rand.nextDouble();
+        double next = 1.0 - rand.nextDouble();
         return (-1 * Math.log(next)) / lambda;
     }
 }
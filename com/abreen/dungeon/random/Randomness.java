@@ -0,0 +1,145 @@
+package com.abreen.dungeon.random;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+
+/**
+ * The source of all randomness in the game. Randomness is drawn from named
+ * streams (e.g., one for the narrator and one for the weather), so that
+ * adding random choices to one part of the game does not change the
+ * choices made by another.
+ * 
+ * Normally, each thread draws from its own generator for each stream, split
+ * off from one root generator, so that threads never contend for a seed.
+ * After setSeed() is called, every stream is instead a single sequence
+ * derived from the seed and the stream's name, so that a whole simulation
+ * can be replayed (e.g., for benchmarks and regression tests). In this
+ * deterministic mode, threads drawing from the same stream take turns.
+ */
+public final class Randomness {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private static SplittableRandom root = new SplittableRandom();
+
+    /*
+     * The seed set by the last call to setSeed(), or null if it has not
+     * been called. A new Seed is made by every call, so that streams know
+     * to start their sequences over. Read without locking on every draw.
+     */
+    private static volatile Seed seeded;
+
+    private static final class Seed {
+        private final long value;
+
+        private Seed(long value) {
+            this.value = value;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Stream> STREAMS =
+            new ConcurrentHashMap<String, Stream>();
+
+    private Randomness() {}
+
+    /**
+     * Makes every stream deterministic, starting from the specified seed.
+     * Streams already in use start their sequences over.
+     */
+    public static void setSeed(long s) {
+        seeded = new Seed(s);
+    }
+
+    public static boolean isDeterministic() {
+        return seeded != null;
+    }
+
+    /**
+     * Returns the stream with the specified name. Every call with the same
+     * name returns the same stream, so all of its users share its sequence
+     * in deterministic mode.
+     */
+    public static Stream stream(String name) {
+        if (name == null)
+            throw new IllegalArgumentException("stream must have a name");
+
+        Stream s = STREAMS.get(name);
+        if (s == null) {
+            Stream made = new Stream(name);
+            s = STREAMS.putIfAbsent(name, made);
+            if (s == null)
+                s = made;
+        }
+
+        return s;
+    }
+
+    private static synchronized SplittableRandom split() {
+        return root.split();
+    }
+
+    public static final class Stream {
+        private final String name;
+
+        private final ThreadLocal<SplittableRandom> local =
+                new ThreadLocal<SplittableRandom>() {
+            protected SplittableRandom initialValue() {
+                return split();
+            }
+        };
+
+        /*
+         * Used only in deterministic mode; guarded by this.
+         */
+        private SplittableRandom shared;
+        private Seed sharedSeed;
+
+        private Stream(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Returns a pseudorandom int between 0 (inclusive) and the bound
+         * (exclusive).
+         */
+        public int nextInt(int bound) {
+            Seed s = seeded;
+            if (s == null)
+                return local.get().nextInt(bound);
+
+            synchronized (this) {
+                return shared(s).nextInt(bound);
+            }
+        }
+
+        /**
+         * Returns a pseudorandom double between 0 (inclusive) and 1
+         * (exclusive).
+         */
+        public double nextDouble() {
+            Seed s = seeded;
+            if (s == null)
+                return local.get().nextDouble();
+
+            synchronized (this) {
+                return shared(s).nextDouble();
+            }
+        }
+
+        /*
+         * Called with this locked.
+         */
+        private SplittableRandom shared(Seed s) {
+            if (sharedSeed != s) {
+                long h = name.hashCode() * GOLDEN_GAMMA;
+                shared = new SplittableRandom(s.value ^ h);
+                sharedSeed = s;
+            }
+
+            return shared;
+        }
+    }
+}
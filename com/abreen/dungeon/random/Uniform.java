@@ -1,11 +1,9 @@
 package com.abreen.dungeon.random;
 
-import java.util.Random;
-
 public class Uniform extends Distribution {
     private double left;
     private double right;
-    private Random rand;
+    private Randomness.Stream rand;
 
     /**
      * Construct a new random distribution with left and right bounds.
@@ -15,9 +13,21 @@ public class Uniform extends Distribution {
      * @param r The right bound
      */
     public Uniform(double l, double r) {
+        this(l, r, Randomness.stream("uniform"));
+    }
+    
+    /**
+     * Construct a new random distribution with left and right bounds, drawing
+     * from the specified stream.
+     * 
+     * @param l The left bound
+     * @param r The right bound
+     * @param s The stream of randomness
+     */
+    public Uniform(double l, double r, Randomness.Stream s) {
         this.left = l;
         this.right = r;
-        this.rand = new Random();
+        this.rand = s;
     }
 
     public double next() {
@@ -0,0 +1,105 @@
+package com.abreen.dungeon.state;
+
+/**
+ * A way of finding a room's detail for a part of the day and weather the
+ * universe file does not describe. Fallbacks are tried in the order given
+ * by the universe file's "detailFallback" list, and the first to find a
+ * detail wins.
+ */
+public enum DetailFallback {
+    /**
+     * Use the detail for the same part of the day in clear weather.
+     */
+    CLEAR("clear"),
+
+    /**
+     * Use the detail for the same weather at the other part of the day.
+     */
+    DAY_PART("daypart"),
+
+    /**
+     * Use any detail the room has (the first in day part, then weather,
+     * order).
+     */
+    ANY("any");
+
+    /**
+     * The fallbacks used when a universe file does not list its own: none,
+     * so that a room shows no detail for conditions it does not describe.
+     */
+    public static final DetailFallback[] DEFAULT_CHAIN = {};
+
+    private String key;
+
+    DetailFallback(String s) {
+        this.key = s;
+    }
+
+    public static DetailFallback fromString(String s) {
+        if (s == null)
+            throw new IllegalArgumentException("fallback must be non-null");
+
+        for (DetailFallback f : DetailFallback.values())
+            if (f.key.equals(s))
+                return f;
+
+        return null;
+    }
+
+    /**
+     * Returns the detail this fallback would use in place of the missing
+     * detail at [h][w], or null if it finds none.
+     *
+     * @param table
+     *            The details given by the universe file, indexed by day part
+     *            and weather ordinals
+     */
+    public String find(String[][] table, DayPart h, Weather w) {
+        switch (this) {
+        case CLEAR:
+            return table[h.ordinal()][Weather.CLEAR.ordinal()];
+        case DAY_PART:
+            for (DayPart other : DayPart.values())
+                if (other != h && table[other.ordinal()][w.ordinal()] != null)
+                    return table[other.ordinal()][w.ordinal()];
+            return null;
+        case ANY:
+        default:
+            for (String[] row : table)
+                for (String detail : row)
+                    if (detail != null)
+                        return detail;
+            return null;
+        }
+    }
+
+    /**
+     * Fills in every missing detail of a table using a chain of fallbacks.
+     * Only details given by the universe file are used, so the result does
+     * not depend on the order in which the table is filled.
+     *
+     * @return A new, filled table (details still missing are null)
+     */
+    public static String[][] fill(String[][] table, DetailFallback[] chain) {
+        DayPart[] parts = DayPart.values();
+        Weather[] weathers = Weather.values();
+        String[][] filled = new String[parts.length][weathers.length];
+
+        for (DayPart h : parts) {
+            for (Weather w : weathers) {
+                String detail = table[h.ordinal()][w.ordinal()];
+
+                for (int i = 0; detail == null && i < chain.length; i++)
+                    detail = chain[i].find(table, h, w);
+
+                filled[h.ordinal()][w.ordinal()] = detail;
+            }
+        }
+
+        return filled;
+    }
+
+    public String toString() {
+        return this.key;
+    }
+}
@@ -1,67 +1,198 @@
 package com.abreen.dungeon.state;
 
-import java.util.*;
-
 import com.abreen.dungeon.DungeonServer;
-import com.abreen.dungeon.model.*;
+import com.abreen.dungeon.util.Histogram;
 
 public class DungeonGameTick extends Thread {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * What the tick does when it falls behind schedule because ticks took
+     * longer than the tick period.
+     */
+    public static enum Policy {
+        /**
+         * Run the missed ticks back to back until the tick is on schedule
+         * again, so that no game time is lost. If more than
+         * MAX_CATCH_UP_TICKS were missed, only that many are run and the
+         * rest are skipped.
+         */
+        CATCH_UP("catchup"),
+
+        /**
+         * Drop the missed ticks and carry on from the next scheduled tick.
+         */
+        SKIP("skip"),
+
+        /**
+         * Advance the universe's time by all of the missed ticks at once,
+         * then carry on from the next scheduled tick. Game time keeps its
+         * pace without running the missed ticks one by one.
+         */
+        BULK("bulk");
+
+        private String key;
+
+        Policy(String s) {
+            this.key = s;
+        }
+
+        public static Policy fromString(String s) {
+            if (s == null)
+                throw new IllegalArgumentException("policy must be non-null");
+
+            for (Policy p : Policy.values())
+                if (p.key.equals(s))
+                    return p;
+
+            return null;
+        }
+    }
+
+    public static final Policy DEFAULT_POLICY = Policy.CATCH_UP;
+
+    /**
+     * The most ticks the CATCH_UP policy will run back to back. If the tick
+     * is further behind than this, the rest are skipped.
+     */
+    public static final int MAX_CATCH_UP_TICKS = 60;
+
     public boolean running = true;
-    
+
+    private Policy policy;
+
+    /*
+     * Tick metrics. Durations and overruns are in nanoseconds; an overrun is
+     * the time by which a tick's work exceeded the tick period.
+     */
+    private Histogram durations = new Histogram();
+    private Histogram overruns = new Histogram();
+    private volatile long numberOfTicks;
+    private volatile long numberOfSkippedTicks;
+    private volatile long numberOfBulkTicks;
+
+    public DungeonGameTick() {
+        this(DEFAULT_POLICY);
+    }
+
+    public DungeonGameTick(Policy p) {
+        if (p == null)
+            throw new IllegalArgumentException("policy must be non-null");
+
+        this.policy = p;
+    }
+
+    public Policy getPolicy() {
+        return this.policy;
+    }
+
+    public Histogram getDurations() {
+        return this.durations;
+    }
+
+    public Histogram getOverruns() {
+        return this.overruns;
+    }
+
+    public long getNumberOfTicks() {
+        return this.numberOfTicks;
+    }
+
+    public long getNumberOfSkippedTicks() {
+        return this.numberOfSkippedTicks;
+    }
+
+    /**
+     * Returns the number of missed ticks whose time was added in bulk by the
+     * BULK policy.
+     */
+    public long getNumberOfBulkTicks() {
+        return this.numberOfBulkTicks;
+    }
+
+    /*
+     * Ticks are scheduled at a fixed rate against a monotonic clock: the
+     * n-th tick is due at start + n * period, however long the previous
+     * ticks took, so the time spent doing the work does not add up over
+     * time as drift.
+     */
     public void run() {
         int scale = DungeonServer.universe.getTimescale();
-        
+        long period = NANOS_PER_SECOND / scale;
+        long next = System.nanoTime() + period;
+
         while (running) {
-            try {
-                Thread.sleep(1000 / scale);
-            } catch (InterruptedException e) {
-                return;
-            }
-            
-            /*
-             * Skips all object updates if there are no players connected.
-             */
-            if (DungeonServer.universe.getNumberOfPlayers() == 0)
-                continue;
+            long delay = next - System.nanoTime();
 
-            /*
-             * Update all game objects, starting with the universe.
-             */
-            DungeonServer.universe.tick();
-            
-            /*
-             * Update players.
-             */
-            Iterator<Player> players = DungeonServer.universe.getPlayers();
-            while (players.hasNext()) {
-                Player p = players.next();
-                
-                // update the player themselves
-                p.tick();
-                
-                // update all items in player's inventory
-                Iterator<Item> items = p.getInventoryIterator();
-                while (items.hasNext()) {
-                    Item i = items.next();
-                    if (i instanceof Stateful)
-                        ((Stateful) i).tick();
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay / NANOS_PER_MILLI,
+                            (int) (delay % NANOS_PER_MILLI));
+                } catch (InterruptedException e) {
+                    return;
                 }
             }
-            
+
+            timedTick(1, period);
+            numberOfTicks++;
+
+            next += period;
+
             /*
-             * Update items in all rooms.
+             * If we are now more than a whole period behind, either let the
+             * loop run the missed ticks without sleeping (catching up, but
+             * skipping any beyond the last MAX_CATCH_UP_TICKS), add their
+             * time all at once, or move the schedule forward past them.
              */
-            Iterator<Room> rooms = DungeonServer.universe.getRooms();
-            while (rooms.hasNext()) {
-                Room r = rooms.next();
-                
-                Iterator<Item> items = r.getItems().iterator();
-                while (items.hasNext()) {
-                    Item i = items.next();
-                    if (i instanceof Stateful)
-                        ((Stateful) i).tick();
-                }
+            long behind = System.nanoTime() - next;
+            if (behind >= period) {
+                long missed = behind / period;
+                long skipped = 0;
+
+                if (policy == Policy.BULK) {
+                    timedTick(missed, period);
+                    next += missed * period;
+                    numberOfBulkTicks += missed;
+                } else if (policy == Policy.SKIP)
+                    skipped = missed;
+                else if (missed > MAX_CATCH_UP_TICKS)
+                    skipped = missed - MAX_CATCH_UP_TICKS;
+
+                next += skipped * period;
+                numberOfSkippedTicks += skipped;
             }
         }
     }
+
+    /*
+     * Runs a tick of the specified number of seconds and records how long it
+     * took, and by how much it overran the tick period. A bulk tick is
+     * recorded once, like any other, since it is one piece of work.
+     */
+    private void timedTick(long seconds, long period) {
+        long start = System.nanoTime();
+        tick(seconds);
+        long duration = System.nanoTime() - start;
+
+        durations.record(duration);
+        if (duration > period)
+            overruns.record(duration - period);
+    }
+
+    /*
+     * Advances the universe by the specified number of seconds, running the
+     * events that fall due (weather changes, player status triggers, and so
+     * on). Objects that change with time work out their state when asked
+     * for it, so nothing else needs to be visited.
+     */
+    private void tick(long seconds) {
+        /*
+         * Skips all updates if there are no players connected.
+         */
+        if (DungeonServer.universe.getNumberOfPlayers() == 0)
+            return;
+
+        DungeonServer.universe.advance(seconds);
+    }
 }
@@ -1,19 +1,262 @@
 package com.abreen.dungeon.state;
 
+import java.io.*;
+
+import com.abreen.dungeon.DungeonServer;
+
 /**
  * A class representing all the player status variables (e.g., fatigue).
- * Each Player object holds a reference to exactly one PlayerState object
- * and updates this object inside its tick() method.
+ * Each Player object holds a reference to exactly one PlayerState object.
+ * 
+ * Values that change with time are not updated every tick. Instead, each
+ * one stores a base value, the game tick at which it was taken, and the
+ * rate at which it changes per tick, and its current value is worked out
+ * when it is asked for. While the player is in the universe their needs
+ * grow by one per tick. While they are away the needs are paused, and when
+ * they return they are advanced all at once by the game time that passed
+ * in the meantime (see DungeonUniverse.admit()).
+ * 
+ * Each need is divided into BANDS bands (e.g., "hungry", "very hungry").
+ * Rather than checking every tick whether a need has moved into another
+ * band, the tick at which it next will is worked out from its rate, and a
+ * timer is scheduled for that tick. The listener is told when the timer
+ * fires. The timer is replaced whenever the value or the rate changes.
  * 
  * @author Alexander Breen <alexander.breen@gmail.com>
  */
-public class PlayerState {
+public class PlayerState implements Serializable, Stateful {
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * The number of bands each need is divided into, from 0 (e.g., sated)
+     * up to the need's maximum.
+     */
+    public static final int BANDS = 4;
+    
+    /**
+     * How much each need grows per tick while the player is in the universe.
+     */
+    public static final long RATE = 1;
+    
+    public static enum Kind {
+        FATIGUE, HUNGER, THIRST
+    }
+    
+    /**
+     * An object to be told when one of the player's needs moves into
+     * another band.
+     */
+    public static interface Listener {
+        public void bandCrossed(Kind k, int band);
+    }
+    
+    /**
+     * A player status variable that changes linearly with game time.
+     */
+    public final class Need implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final Kind kind;
+        private final long max;
+        private long base;
+        private long baseTick;
+        private long rate;
+        
+        /*
+         * Fires when the value next crosses into another band.
+         */
+        private transient TimingWheel.Timer trigger;
+        
+        /*
+         * The band the listener was last told about. A band is only passed
+         * on when it differs from this one.
+         */
+        private transient int bandSent;
+        
+        private Need(Kind kind, long initial, long max) {
+            this.kind = kind;
+            this.base = initial;
+            this.max = max;
+        }
+        
+        public Kind getKind() {
+            return this.kind;
+        }
+        
+        /**
+         * Returns the value at the specified game tick.
+         */
+        public synchronized long get(long tick) {
+            return base + rate * (tick - baseTick);
+        }
+        
+        public long get() {
+            return get(now());
+        }
+        
+        public long getMax() {
+            return this.max;
+        }
+        
+        /**
+         * Returns the rate of change per tick.
+         */
+        public synchronized long getRate() {
+            return this.rate;
+        }
+        
+        /**
+         * Changes the rate of change per tick from the current tick on.
+         */
+        public synchronized void setRate(long r) {
+            rebase(now());
+            this.rate = r;
+            reschedule();
+        }
+        
+        public synchronized void set(long value) {
+            rebase(now());
+            this.base = value;
+            reschedule();
+        }
+        
+        public synchronized void add(long delta) {
+            rebase(now());
+            this.base += delta;
+            reschedule();
+        }
+        
+        /**
+         * Returns a "level" --- a number from 0 to the supplied scale,
+         * expressing more imprecisely the value.
+         */
+        public int level(int scale) {
+            return level(get(), scale);
+        }
+        
+        private int level(long value, int scale) {
+            double ratio = (double)value / max;
+            return (int)(ratio * scale);
+        }
+        
+        private void rebase(long tick) {
+            this.base = get(tick);
+            this.baseTick = tick;
+        }
+        
+        /*
+         * Replaces the trigger with one for the next band crossing, if the
+         * value is changing and someone is listening.
+         */
+        private synchronized void reschedule() {
+            if (trigger != null) {
+                DungeonServer.universe.cancel(trigger);
+                trigger = null;
+            }
+            
+            if (rate == 0 || listener == null)
+                return;
+            
+            long value = get(now());
+            int band = level(value, BANDS);
+            
+            /*
+             * The lowest value in band b is ceil(b * max / BANDS). Rising,
+             * the target is the lowest value of the next band; falling, it
+             * is the value just below the lowest value of this band.
+             */
+            long target;
+            if (rate > 0) {
+                if (band >= BANDS)
+                    return;
+                
+                target = ((band + 1) * max + BANDS - 1) / BANDS;
+            } else {
+                if (band <= 0)
+                    return;
+                
+                target = (band * max + BANDS - 1) / BANDS - 1;
+            }
+            
+            // round up: the delta and the rate have the same sign
+            long delta = target - value;
+            long ticks = (delta + rate - Long.signum(rate)) / rate;
+            
+            trigger = DungeonServer.universe.schedule(ticks, new BandTrigger());
+        }
+        
+        /*
+         * Tells the listener when the need moves into another band.
+         */
+        private class BandTrigger implements Runnable {
+            public void run() {
+                fire();
+            }
+            
+            public String toString() {
+                return kind.toString().toLowerCase() + " band trigger";
+            }
+        }
+        
+        /*
+         * Starts the listener off in the current band, and schedules the
+         * trigger for the next crossing.
+         */
+        private synchronized void listen() {
+            bandSent = level(BANDS);
+            reschedule();
+        }
+        
+        private void fire() {
+            int band;
+            Listener l;
+            
+            synchronized (this) {
+                trigger = null;
+                band = level(BANDS);
+                reschedule();
+                
+                if (band == bandSent)
+                    return;
+                
+                bandSent = band;
+                l = listener;
+            }
+            
+            if (l != null)
+                l.bandCrossed(kind, band);
+        }
+        
+        public String toString() {
+            return Long.toString(get());
+        }
+        
+        /*
+         * A need is saved with its current value. It comes back paused and
+         * measured from the tick at which it is read, since the ticks that
+         * passed in between are added separately when the player returns
+         * (see DungeonUniverse.admit()).
+         */
+        private synchronized void writeObject(ObjectOutputStream out)
+                throws IOException {
+            rebase(now());
+            out.defaultWriteObject();
+        }
+        
+        private void readObject(ObjectInputStream in)
+                throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            this.baseTick = now();
+            this.rate = 0;
+        }
+    }
     
     /**
      * Player's level of fatigue. A value of 0 corresponds to well-rested.
      * A value of MAX_FATIGUE causes death.
      */
-    public long fatigue = MAX_FATIGUE / 2;
+    public final Need fatigue =
+            new Need(Kind.FATIGUE, MAX_FATIGUE / 2, MAX_FATIGUE);
     public static final long MAX_FATIGUE = 0x10000;
     
     /**
@@ -27,23 +270,82 @@ public class PlayerState {
      * Player's hunger level. A value of 0 corresponds to sated.
      * A value of MAX_HUNGER initiates starvation.
      */
-    public long hunger = MAX_HUNGER / 2;
+    public final Need hunger =
+            new Need(Kind.HUNGER, MAX_HUNGER / 2, MAX_HUNGER);
     public static final long MAX_HUNGER = 0x10000;
     
     /**
      * Player's thirst level. A value of 0 corresponds to sated.
      * A value of MAX_THIRST initiates dehydration.
      */
-    public long thirst = MAX_THIRST / 2;
+    public final Need thirst =
+            new Need(Kind.THIRST, MAX_THIRST / 2, MAX_THIRST);
     public static final long MAX_THIRST = 0x1000;
     
+    private transient volatile Listener listener;
+    
+    /*
+     * The current game tick, against which needs are measured. This is the
+     * timers' tick rather than the universe's, so that a trigger that fires
+     * while the universe is advancing many ticks at once measures the need
+     * at the tick it was due, not at the end of the advance.
+     */
+    private static long now() {
+        return DungeonServer.universe.getTimerTick();
+    }
+    
+    /**
+     * Sets the object to be told when a need moves into another band, or
+     * null for none.
+     */
+    public void setListener(Listener l) {
+        this.listener = l;
+        
+        fatigue.listen();
+        hunger.listen();
+        thirst.listen();
+    }
+    
+    /**
+     * Starts the player's needs growing, as when the player enters the
+     * universe.
+     */
+    public void resume() {
+        fatigue.setRate(RATE);
+        hunger.setRate(RATE);
+        thirst.setRate(RATE);
+    }
+    
+    public void tick() {
+        advance(1);
+    }
+    
+    /**
+     * Grows the player's needs by as much as they would grow in the
+     * specified number of ticks in the universe.
+     */
+    public void advance(long ticks) {
+        fatigue.add(ticks * RATE);
+        hunger.add(ticks * RATE);
+        thirst.add(ticks * RATE);
+    }
+    
+    /**
+     * Stops the player's needs from changing, as when the player leaves the
+     * universe.
+     */
+    public void pause() {
+        fatigue.setRate(0);
+        hunger.setRate(0);
+        thirst.setRate(0);
+    }
+    
     /**
      * Returns a fatigue "level" --- a number from 0 to the supplied scale,
      * expressing more imprecisely the player's level of fatigue.
      */
     public int fatigueLevel(int scale) {
-        double ratio = (double)fatigue / MAX_FATIGUE;
-        return (int)(ratio * scale);
+        return fatigue.level(scale);
     }
     
     /**
@@ -51,8 +353,7 @@ public class PlayerState {
      * expressing more imprecisely the player's level of hunger.
      */
     public int hungerLevel(int scale) {
-        double ratio = (double)hunger / MAX_HUNGER;
-        return (int)(ratio * scale);
+        return hunger.level(scale);
     }
     
     /**
@@ -60,8 +361,7 @@ public class PlayerState {
      * expressing more imprecisely the player's level of thirst.
      */
     public int thirstLevel(int scale) {
-        double ratio = (double)thirst / MAX_THIRST;
-        return (int)(ratio * scale);
+        return thirst.level(scale);
     }
     
     /*
@@ -70,6 +370,6 @@ public class PlayerState {
      */
     public String toString() {
         return String.format("F: %d, Tm: %f, H: %d, Th: %d",
-                fatigue, temperature, hunger, thirst);
+                fatigue.get(), temperature, hunger.get(), thirst.get());
     }
 }
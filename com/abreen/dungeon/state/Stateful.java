@@ -15,4 +15,12 @@ public interface Stateful {
      * it would respond to the passage of time.
      */
     public void tick();
+    
+    /**
+     * This method should change the internal state of a game object as if
+     * tick() had been called the specified number of times, but in constant
+     * time. It is used to catch objects up on time they spent outside the
+     * universe (e.g., in the inventory of a player who has logged out).
+     */
+    public void advance(long ticks);
 }
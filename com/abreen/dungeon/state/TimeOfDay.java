@@ -4,86 +4,133 @@ import java.io.Serializable;
 
 /**
  * A light-weight and general-purpose class representing time of day.
- * Instances of this class are designed to be mutable, so that times of day
- * can be set, reset, and advanced.
- * 
+ * Instances of this class are immutable: a time of day is stored as the
+ * number of seconds since midnight, so that adding to it, comparing it and
+ * finding its part of the day are all constant time.
+ *
  * @author Alexander Breen <alexander.breen@gmail.com>
  */
-public class TimeOfDay implements Serializable {
+public final class TimeOfDay implements Serializable, Comparable<TimeOfDay> {
     private static final long serialVersionUID = 1L;
-    
+
     private static final int HOURS_IN_DAY = 24;
     private static final int MINUTES_IN_HOUR = 60;
     private static final int SECONDS_IN_MINUTE = 60;
-    
-    public int hour;
-    public int minute;
-    public int second;
-    
+    private static final int SECONDS_IN_HOUR =
+            MINUTES_IN_HOUR * SECONDS_IN_MINUTE;
+    private static final int SECONDS_IN_DAY = HOURS_IN_DAY * SECONDS_IN_HOUR;
+
+    private static final int DAY_STARTS = 6 * SECONDS_IN_HOUR;
+    private static final int NIGHT_STARTS = 18 * SECONDS_IN_HOUR;
+
+    private final int seconds;
+
+    /*
+     * Formatted strings, made when first asked for.
+     */
+    private transient String string12h, string24h;
+
     public TimeOfDay(int h, int m, int s) {
         if (h < 0 || h > HOURS_IN_DAY)
             throw new IllegalArgumentException("invalid initial hour");
-        
+
         if (m < 0 || m > MINUTES_IN_HOUR)
             throw new IllegalArgumentException("invalid initial minute");
-        
+
         if (s < 0 || s > SECONDS_IN_MINUTE)
             throw new IllegalArgumentException("invalid initial second");
-        
-        this.hour = h;
-        this.minute = m;
-        this.second = s;
+
+        this.seconds = (h * SECONDS_IN_HOUR + m * SECONDS_IN_MINUTE + s)
+                % SECONDS_IN_DAY;
+    }
+
+    private TimeOfDay(int secondsOfDay) {
+        this.seconds = secondsOfDay;
     }
-    
-    public TimeOfDay(TimeOfDay t) {
-        this.hour = t.hour;
-        this.minute = t.minute;
-        this.second = t.second;
+
+    public int getHour() {
+        return seconds / SECONDS_IN_HOUR;
     }
-    
-    public boolean equals(TimeOfDay t) {
-        return hour == t.hour && minute == t.minute && second == t.second;
+
+    public int getMinute() {
+        return seconds / SECONDS_IN_MINUTE % MINUTES_IN_HOUR;
     }
-    
-    public void addSecond() {
-        second++;
-        
-        if (second >= SECONDS_IN_MINUTE) {
-            second = 0;
-            minute++;
-        }
-        
-        if (minute >= MINUTES_IN_HOUR) {
-            minute = 0;
-            hour++;
-        }
-        
-        if (hour >= HOURS_IN_DAY) {
-            hour = 0;
-        }
+
+    public int getSecond() {
+        return seconds % SECONDS_IN_MINUTE;
+    }
+
+    /**
+     * Returns the number of seconds since midnight.
+     */
+    public int getSecondOfDay() {
+        return seconds;
     }
-    
-    public void addSeconds(int s) {
-        while (s-- > 0) addSecond();
+
+    /**
+     * Returns the time of day the specified number of seconds later (or
+     * earlier, if negative), wrapping around midnight.
+     */
+    public TimeOfDay plusSeconds(long s) {
+        if (s == 0)
+            return this;
+
+        long t = (seconds + s % SECONDS_IN_DAY) % SECONDS_IN_DAY;
+        if (t < 0)
+            t += SECONDS_IN_DAY;
+
+        return new TimeOfDay((int) t);
+    }
+
+    public int compareTo(TimeOfDay t) {
+        return Integer.compare(seconds, t.seconds);
+    }
+
+    public boolean equals(Object o) {
+        return o instanceof TimeOfDay && ((TimeOfDay) o).seconds == seconds;
+    }
+
+    public int hashCode() {
+        return seconds;
     }
-    
+
     public DayPart getDayPart() {
-        if (hour > 5 && hour < 18)
+        if (seconds >= DAY_STARTS && seconds < NIGHT_STARTS)
             return DayPart.DAY;
         else
             return DayPart.NIGHT;
     }
-    
+
     public String to12hString() {
-        int h = hour % 12;
-        if (h == 0) h = 12;
-        return String.format("%02d:%02d:%02d", h, minute, second);
+        if (string12h == null) {
+            int h = getHour() % 12;
+            if (h == 0) h = 12;
+            string12h = format(h);
+        }
+
+        return string12h;
     }
-    
+
     public String to24hString() {
-        return String.format("%02d:%02d:%02d", hour, minute, second);
+        if (string24h == null)
+            string24h = format(getHour());
+
+        return string24h;
+    }
+
+    /*
+     * Formats as hh:mm:ss with the specified hour.
+     */
+    private String format(int h) {
+        int m = getMinute(), s = getSecond();
+        char[] cs = {
+            (char) ('0' + h / 10), (char) ('0' + h % 10), ':',
+            (char) ('0' + m / 10), (char) ('0' + m % 10), ':',
+            (char) ('0' + s / 10), (char) ('0' + s % 10)
+        };
+        return new String(cs);
     }
-    
+
     public String toString() {
         return to24hString();
     }
@@ -0,0 +1,254 @@
+package com.abreen.dungeon.state;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.abreen.dungeon.util.Histogram;
+
+/**
+ * A hierarchical timing wheel that runs tasks after a number of game ticks.
+ * Scheduling and cancelling a timer are constant time, and advancing the
+ * wheel by one tick only looks at the timers that are due (plus, once every
+ * 64 ticks, the timers that have moved closer to being due), so pending
+ * timers cost nothing per tick however many there are.
+ *
+ * Each level of the wheel has 64 slots. Level 0 holds timers due in the
+ * current run of 64 ticks, one slot per tick; level 1 holds timers due in
+ * the current run of 64 * 64 ticks, one slot per 64 ticks; and so on. When
+ * the wheel reaches the start of a slot on a higher level, the timers in
+ * that slot are moved down to the level below.
+ *
+ * How long each task takes to run is recorded in a histogram for the
+ * task's class, so that expensive kinds of task can be found.
+ */
+public class TimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    /*
+     * Enough levels to hold any non-negative long deadline.
+     */
+    private static final int LEVELS = (63 + SLOT_BITS - 1) / SLOT_BITS;
+
+    /**
+     * A pending task. A timer is returned by schedule() so that it can later
+     * be cancelled.
+     */
+    public static final class Timer {
+        private final long deadline;
+        private final Runnable task;
+
+        private Timer prev, next;
+
+        private Timer(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /**
+         * Returns the tick at which this timer runs.
+         */
+        public long getDeadline() {
+            return this.deadline;
+        }
+
+        /**
+         * Returns whether this timer has neither run nor been cancelled.
+         */
+        public boolean isPending() {
+            return this.next != null;
+        }
+    }
+
+    /*
+     * The head of each slot's circular list is a sentinel timer.
+     */
+    private Timer[][] slots;
+    private long now;
+    private int size;
+
+    /*
+     * Run times of tasks in nanoseconds, by the class of the task
+     */
+    private ConcurrentHashMap<Class<?>, Histogram> costs =
+            new ConcurrentHashMap<Class<?>, Histogram>();
+
+    public TimingWheel() {
+        this(0);
+    }
+
+    /**
+     * Creates a wheel whose current tick is the specified tick.
+     */
+    public TimingWheel(long start) {
+        if (start < 0)
+            throw new IllegalArgumentException("start must be >= 0");
+
+        this.now = start;
+        this.slots = new Timer[LEVELS][SLOTS];
+        for (int l = 0; l < LEVELS; l++) {
+            for (int s = 0; s < SLOTS; s++) {
+                Timer head = new Timer(-1, null);
+                head.prev = head.next = head;
+                this.slots[l][s] = head;
+            }
+        }
+    }
+
+    public synchronized long getNow() {
+        return this.now;
+    }
+
+    /**
+     * Returns the run times of the tasks run so far, by the class of the
+     * task.
+     */
+    public Map<Class<?>, Histogram> getCosts() {
+        return Collections.unmodifiableMap(this.costs);
+    }
+
+    /**
+     * Returns the number of pending timers.
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * Runs the task after the specified number of ticks. A delay of less
+     * than one tick is treated as one tick.
+     */
+    public synchronized Timer schedule(long delay, Runnable task) {
+        if (task == null)
+            throw new IllegalArgumentException("task must be non-null");
+
+        if (delay < 1)
+            delay = 1;
+
+        long deadline = now + delay;
+        if (deadline < 0)
+            deadline = Long.MAX_VALUE;
+
+        Timer t = new Timer(deadline, task);
+        insert(t);
+        size++;
+        return t;
+    }
+
+    /**
+     * Cancels the timer. Returns false if it had already run or been
+     * cancelled.
+     */
+    public synchronized boolean cancel(Timer t) {
+        if (t == null || !t.isPending())
+            return false;
+
+        unlink(t);
+        size--;
+        return true;
+    }
+
+    /**
+     * Advances the wheel to the specified tick, running every timer that is
+     * due on the way in order of deadline. Tasks are run by the calling
+     * thread, outside of the wheel's lock, so they may schedule or cancel
+     * other timers. A task that throws is logged, and does not keep the
+     * timers after it from running.
+     */
+    public void advanceTo(long tick) {
+        ArrayList<Timer> due = new ArrayList<Timer>();
+
+        while (true) {
+            synchronized (this) {
+                if (now >= tick)
+                    return;
+
+                now++;
+                cascade();
+
+                Timer head = slots[0][(int) (now & SLOT_MASK)];
+                while (head.next != head) {
+                    Timer t = head.next;
+                    unlink(t);
+                    size--;
+                    due.add(t);
+                }
+            }
+
+            for (Timer t : due) {
+                long start = System.nanoTime();
+
+                try {
+                    t.task.run();
+                } catch (RuntimeException e) {
+                    System.err.printf("DungeonServer: timer task %s failed "
+                            + "at tick %d\n", t.task, t.deadline);
+                    e.printStackTrace();
+                }
+
+                costOf(t.task).record(System.nanoTime() - start);
+            }
+            due.clear();
+        }
+    }
+
+    private Histogram costOf(Runnable task) {
+        Class<?> c = task.getClass();
+        Histogram h = costs.get(c);
+
+        if (h == null) {
+            costs.putIfAbsent(c, new Histogram());
+            h = costs.get(c);
+        }
+
+        return h;
+    }
+
+    /*
+     * A timer goes on the lowest level whose slot span contains both the
+     * current tick and the deadline: the level is given by the highest bit
+     * in which the two differ.
+     */
+    private void insert(Timer t) {
+        long diff = t.deadline ^ now;
+        int level = diff == 0 ? 0
+                : (63 - Long.numberOfLeadingZeros(diff)) / SLOT_BITS;
+        int slot = (int) ((t.deadline >>> (level * SLOT_BITS)) & SLOT_MASK);
+
+        Timer head = slots[level][slot];
+        t.prev = head.prev;
+        t.next = head;
+        head.prev.next = t;
+        head.prev = t;
+    }
+
+    private static void unlink(Timer t) {
+        t.prev.next = t.next;
+        t.next.prev = t.prev;
+        t.prev = t.next = null;
+    }
+
+    /*
+     * At the start of a slot on level l > 0, moves the timers in that slot
+     * down to lower levels. Higher levels go first, so that timers can move
+     * down more than one level in one tick.
+     */
+    private void cascade() {
+        int top = 0;
+        while (top + 1 < LEVELS
+                && (now & ((1L << ((top + 1) * SLOT_BITS)) - 1)) == 0)
+            top++;
+
+        for (int l = top; l > 0; l--) {
+            int slot = (int) ((now >>> (l * SLOT_BITS)) & SLOT_MASK);
+            Timer head = slots[l][slot];
+
+            while (head.next != head) {
+                Timer t = head.next;
+                unlink(t);
+                insert(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.abreen.dungeon.util;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A thread-safe histogram of non-negative long values (e.g., durations in
+ * nanoseconds). Values are counted in power-of-two buckets, so recording is
+ * constant time and the histogram takes constant space; percentiles are
+ * therefore only accurate to within a factor of two.
+ */
+public class Histogram {
+    private static final int NUM_BUCKETS = 64;
+
+    /*
+     * Bucket i counts values v such that 2^(i-1) <= v < 2^i (bucket 0
+     * counts zeroes).
+     */
+    private AtomicLongArray buckets;
+    private AtomicLong count;
+    private AtomicLong sum;
+    private AtomicLong max;
+
+    public Histogram() {
+        this.buckets = new AtomicLongArray(NUM_BUCKETS);
+        this.count = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+
+        this.buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+
+        long m;
+        while (value > (m = this.max.get()))
+            if (this.max.compareAndSet(m, value))
+                break;
+    }
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+    public double getMean() {
+        long n = this.count.get();
+        return n == 0 ? 0.0 : (double) this.sum.get() / n;
+    }
+
+    /**
+     * Returns an upper bound of the specified percentile of the recorded
+     * values (e.g., 0.99 for the 99th percentile).
+     */
+    public long getPercentile(double p) {
+        long n = this.count.get();
+        if (n == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += this.buckets.get(i);
+            if (seen >= rank)
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, getMax());
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Returns a one-line summary of the histogram, with values divided by
+     * the specified unit (e.g., 1000000 to show nanoseconds as milliseconds).
+     */
+    public String summarize(long unit, String unitName) {
+        double u = unit;
+        return String.format("n=%d mean=%.2f%s p50<=%.2f%s p99<=%.2f%s "
+                + "max=%.2f%s", getCount(),
+                getMean() / u, unitName,
+                getPercentile(0.50) / u, unitName,
+                getPercentile(0.99) / u, unitName,
+                getMax() / u, unitName);
+    }
+
+    public String toString() {
+        return summarize(1, "");
+    }
+}
@@ -0,0 +1,111 @@
+package com.abreen.dungeon.util;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A thread-safe cache holding at most a fixed number of entries. When the
+ * cache is full, adding an entry evicts the least recently used one. Hits
+ * and misses are counted so that the cache's effectiveness can be reported.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the cached values
+ */
+public class LruCache<K, V> {
+    private final int capacity;
+    private final LinkedHashMap<K, V> map;
+
+    private AtomicLong hits;
+    private AtomicLong misses;
+    private AtomicLong evictions;
+
+    public LruCache(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be >= 1");
+
+        this.capacity = capacity;
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+
+        /* An access-ordered map keeps the least recently used entry first */
+        this.map = new LinkedHashMap<K, V>(capacity * 4 / 3 + 1, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > LruCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the value cached for the key, or null on a miss.
+     */
+    public V get(K key) {
+        V v;
+        synchronized (map) {
+            v = map.get(key);
+        }
+
+        if (v == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+
+        return v;
+    }
+
+    public void put(K key, V value) {
+        synchronized (map) {
+            map.put(key, value);
+        }
+    }
+
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * Returns the fraction of lookups that were hits, or 0 if there have
+     * been no lookups.
+     */
+    public double getHitRate() {
+        long h = getHits(), total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public String toString() {
+        return String.format("%d hits, %d misses (%.1f%% hit), "
+                + "%d/%d entries, %d evicted", getHits(), getMisses(),
+                100 * getHitRate(), size(), capacity, getEvictions());
+    }
+}
@@ -0,0 +1,61 @@
+package com.abreen.dungeon.util;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A remembered value computed from some mutable state (e.g., the English
+ * description of a room's exits). The owner of the state calls invalidate()
+ * whenever the state changes, which bumps a modification counter; a value
+ * remembered under an older count is never returned again.
+ * 
+ * To use a memo, read the count with getModifications() before reading the
+ * state, then remember the value under that count. A value computed while
+ * the state was changing is thereby remembered under a count that is
+ * already stale.
+ * 
+ * The remembered value is not serialized.
+ *
+ * @param <V> The type of the remembered value
+ */
+public class Memo<V> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private AtomicInteger modifications;
+    private transient volatile Entry<V> entry;
+
+    public Memo() {
+        this.modifications = new AtomicInteger();
+    }
+
+    public void invalidate() {
+        this.modifications.incrementAndGet();
+    }
+
+    public int getModifications() {
+        return this.modifications.get();
+    }
+
+    /**
+     * Returns the value remembered under the specified count, or null if
+     * there is none.
+     */
+    public V get(int count) {
+        Entry<V> e = this.entry;
+        return e != null && e.count == count ? e.value : null;
+    }
+
+    public void put(int count, V value) {
+        this.entry = new Entry<V>(count, value);
+    }
+
+    private static final class Entry<V> {
+        private final int count;
+        private final V value;
+
+        private Entry(int count, V value) {
+            this.count = count;
+            this.value = value;
+        }
+    }
+}
@@ -22,8 +22,16 @@ public class Pair<X, Y> {
         return "(" + first + ", " + second + ")";
     }
     
-    public boolean equals(Pair<X, Y> other) {
-        return first.equals(other.first) && second.equals(other.second);
+    public boolean equals(Object o) {
+        if (!(o instanceof Pair))
+            return false;
+        
+        Pair<?, ?> other = (Pair<?, ?>) o;
+        return equals(first, other.first) && equals(second, other.second);
+    }
+    
+    private static boolean equals(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
     }
     
     public int hashCode() {
@@ -25,10 +25,18 @@ public class Triple<X, Y, Z> {
         return "(" + first + ", " + second + ", " + third + ")";
     }
     
-    public boolean equals(Triple<X, Y, Z> other) {
-        return first.equals(other.first) &&
-               second.equals(other.second) &&
-               third.equals(other.third);
+    public boolean equals(Object o) {
+        if (!(o instanceof Triple))
+            return false;
+        
+        Triple<?, ?, ?> other = (Triple<?, ?, ?>) o;
+        return equals(first, other.first) &&
+               equals(second, other.second) &&
+               equals(third, other.third);
+    }
+    
+    private static boolean equals(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
     }
     
     public int hashCode() {
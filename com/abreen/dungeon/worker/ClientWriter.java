@@ -0,0 +1,55 @@
+package com.abreen.dungeon.worker;
+
+import java.io.*;
+
+/**
+ * The writer to a connected client, along with the width of the client's
+ * terminal. A client reports its width with the "width" action when it
+ * connects and whenever its terminal is resized; until then, the width is
+ * unknown and messages are sent without wrapping.
+ */
+public class ClientWriter extends PrintWriter {
+    public static final int UNKNOWN_WIDTH = 0;
+    public static final int MIN_WIDTH = 20;
+    public static final int MAX_WIDTH = 1000;
+
+    /**
+     * Widths are rounded down to a multiple of this, so that clients of
+     * similar widths can share wrapped messages.
+     */
+    public static final int WIDTH_CLASS = 8;
+
+    private volatile int width = UNKNOWN_WIDTH;
+
+    public ClientWriter(OutputStream out) {
+        super(out, true);
+    }
+
+    /**
+     * Returns the width to which messages to this client should be wrapped,
+     * or UNKNOWN_WIDTH if they should not be wrapped.
+     */
+    public int getWidthClass() {
+        return this.width - this.width % WIDTH_CLASS;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Sets the width of the client's terminal, in columns.
+     *
+     * @throws IllegalArgumentException
+     *             If the width is neither UNKNOWN_WIDTH nor between
+     *             MIN_WIDTH and MAX_WIDTH
+     */
+    public void setWidth(int columns) {
+        if (columns != UNKNOWN_WIDTH
+                && (columns < MIN_WIDTH || columns > MAX_WIDTH))
+            throw new IllegalArgumentException("width must be between "
+                    + MIN_WIDTH + " and " + MAX_WIDTH);
+
+        this.width = columns;
+    }
+}
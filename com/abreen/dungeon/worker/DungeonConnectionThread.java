@@ -18,7 +18,7 @@ public class DungeonConnectionThread extends Thread {
         PrintWriter out = null;
         BufferedReader in = null;
         try {
-            out = new PrintWriter(this.client.getOutputStream(), true);
+            out = new ClientWriter(this.client.getOutputStream());
             in = new BufferedReader(new InputStreamReader(
                     this.client.getInputStream()));
 
@@ -35,17 +35,12 @@ public class DungeonConnectionThread extends Thread {
             if (DungeonServer.universe == null)
                 throw new NoUniverseException();
 
+            Player p = DungeonServer.universe.register(name, out);
+
             System.out.printf("player '%s' connected (start of stream)\n", name);
             String login = name + " connected.";
             DungeonServer.events.addServerNotificationEvent(login);
 
-            /* Try to access saved state in universe for this player */
-            Player p = null;
-            if (DungeonServer.universe.hasSavedState(name))
-                p = DungeonServer.universe.restore(name, out);
-            else
-                p = DungeonServer.universe.register(name, out);
-
             out.println("Connected.");
 
             String a = DungeonServer.narrator
@@ -99,6 +94,17 @@ public class DungeonConnectionThread extends Thread {
             System.out.printf("player '%s' disconnected (socket failure)\n",
                     name);
             e.printStackTrace();
+        } catch (NameTakenException e) {
+            out.println("The name \"" + name + "\" is taken.");
+            out.close();
+            System.out.printf("player '%s' disconnected (name taken)\n", name);
+
+            try {
+                in.close();
+                client.close();
+            } catch (IOException ex) {
+                System.err.print("DungeonServer: failed closing streams\n");
+            }
         } catch (NoUniverseException e) {
             System.err.print("DungeonServer: universe missing or not ready\n");
             System.out.printf("player '%s' disconnected (no universe)\n", name);
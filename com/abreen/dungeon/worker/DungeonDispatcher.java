@@ -6,6 +6,7 @@ import java.io.*;
 
 import com.abreen.dungeon.DungeonServer;
 import com.abreen.dungeon.model.Player;
+import com.abreen.dungeon.model.Room;
 
 /**
  * The DungeonDispatcher class maintains an event queue that stores and
@@ -21,6 +22,8 @@ public class DungeonDispatcher extends Thread {
     private static final String SERVER_CLOSING_MESSAGE = "Server closing...";
     private static final String SERVER_RESTART_MESSAGE = "Server restarting...";
 
+    private static final PrintWriter[] NO_WRITERS = {};
+
     /**
      * Converts a player iterator (usually produced by methods from
      * DungeonUniverse) to an array containing the player's writers (an ideal
@@ -42,6 +45,36 @@ public class DungeonDispatcher extends Thread {
         return arr;
     }
 
+    /**
+     * Collects the writers of all players in the specified rooms.
+     * 
+     * @param rooms The rooms whose players to select
+     * @return An array containing all the players' writers
+     */
+    public static PrintWriter[] roomsToWriterArray(Room[] rooms) {
+        int size = 0;
+        for (Room r : rooms)
+            size += r.getNumberOfPlayers();
+
+        if (size == 0)
+            return NO_WRITERS;
+
+        PrintWriter[] arr = new PrintWriter[size];
+
+        /*
+         * Players may come and go while we look, so never write past the
+         * count taken above, and trim the array if some have left.
+         */
+        int i = 0;
+        for (Room r : rooms) {
+            Iterator<Player> it = r.getPlayers();
+            while (it.hasNext() && i < size)
+                arr[i++] = it.next().getWriter();
+        }
+
+        return i == size ? arr : Arrays.copyOf(arr, i);
+    }
+
     /**
      * Base abstract class for all dispatcher events.
      */
@@ -287,11 +320,33 @@ public class DungeonDispatcher extends Thread {
                 Event event = this.eventQueue.take();
                 logEvent(event);
                 
+                String s = DungeonServer.narrator.prettify(event.toString());
+
+                /*
+                 * Wrapped once for each width class among the writers
+                 */
+                HashMap<Integer, String> wrapped = null;
+
                 PrintWriter[] writers = event.getWriters();
                 for (PrintWriter writer : writers) {
+                    int width = ClientWriter.UNKNOWN_WIDTH;
+                    if (writer instanceof ClientWriter)
+                        width = ((ClientWriter) writer).getWidthClass();
+
+                    String out = s;
+                    if (width != ClientWriter.UNKNOWN_WIDTH) {
+                        if (wrapped == null)
+                            wrapped = new HashMap<Integer, String>();
+
+                        out = wrapped.get(width);
+                        if (out == null) {
+                            out = wrap(s, width);
+                            wrapped.put(width, out);
+                        }
+                    }
+
                     // println() should automatically flush
-                    String s = DungeonServer.narrator.prettify(event.toString());
-                    writer.println(s);
+                    writer.println(out);
                 }
 
             } catch (InterruptedException e) {
@@ -300,6 +355,82 @@ public class DungeonDispatcher extends Thread {
             }
     }
     
+    /**
+     * Wraps a message so that no line is longer than the specified width,
+     * breaking lines at spaces where possible. Lines that are continued are
+     * indented past their prefix (e.g., CHEVRONS) or their own indentation,
+     * so that clients can show the message without processing it.
+     * 
+     * @param s The message, which may contain several lines
+     * @param width The greatest length of a line
+     * @return The wrapped message
+     */
+    public static String wrap(String s, int width) {
+        StringBuilder buf = null;
+
+        int start = 0;
+        while (start <= s.length()) {
+            int end = s.indexOf('\n', start);
+            if (end == -1)
+                end = s.length();
+
+            if (end - start > width) {
+                if (buf == null)
+                    buf = new StringBuilder(s.length() + s.length() / width
+                            * (width / 2)).append(s, 0, start);
+
+                wrapLine(buf, s, start, end, width);
+            } else if (buf != null) {
+                buf.append(s, start, end);
+            }
+
+            if (end < s.length() && buf != null)
+                buf.append('\n');
+
+            start = end + 1;
+        }
+
+        /* Most messages fit, and are sent as they are */
+        return buf == null ? s : buf.toString();
+    }
+
+    private static void wrapLine(StringBuilder buf, String s, int start,
+            int end, int width) {
+        int indent = 0;
+        if (s.startsWith(CHEVRONS, start))
+            indent = CHEVRONS.length();
+        else if (s.startsWith(ASTERISKS, start))
+            indent = ASTERISKS.length();
+        else if (s.startsWith(BANGS, start))
+            indent = BANGS.length();
+        else
+            while (start + indent < end && s.charAt(start + indent) == ' ')
+                indent++;
+
+        if (indent > width / 2)
+            indent = 0;
+
+        int room = width;
+        while (end - start > room) {
+            /* Break at the last space that fits, or mid-word if none does */
+            int brk = s.lastIndexOf(' ', start + room);
+            if (brk <= start + (room == width ? indent : 0))
+                brk = start + room;
+
+            buf.append(s, start, brk).append('\n');
+            for (int i = 0; i < indent; i++)
+                buf.append(' ');
+
+            start = brk;
+            while (start < end && s.charAt(start) == ' ')
+                start++;
+
+            room = width - indent;
+        }
+
+        buf.append(s, start, end);
+    }
+
     private static void logEvent(Event e) {
         String cls = e.getClass().getSimpleName();
         String s = e.toString();
@@ -1,11 +1,17 @@
 package com.abreen.dungeon.worker;
 
+import java.io.*;
 import java.util.*;
-import java.util.regex.*;
 
+import com.abreen.dungeon.DungeonServer;
 import com.abreen.dungeon.model.*;
+import com.abreen.dungeon.random.Randomness;
 import com.abreen.dungeon.state.PlayerState;
 import com.abreen.dungeon.state.Weather;
+import com.abreen.dungeon.util.Memo;
+import com.abreen.dungeon.worker.Phrasebook.Book;
+import com.abreen.dungeon.worker.Phrasebook.Phrase;
+import com.abreen.dungeon.worker.Phrasebook.PhraseElement;
 
 /*
  * Provides static methods that provide varied and interesting English
@@ -13,21 +19,48 @@ import com.abreen.dungeon.state.Weather;
  */
 public class DungeonNarrator {
     private static final long DEFAULT_RANDOM_SEED = 6;
+    private static final String RANDOM_STREAM = "narrator";
+    public static final String DEFAULT_PHRASEBOOK = "default";
     private static final int DEFAULT_BUFFER_SIZE = 2048;
+    private static final int DEFAULT_LIST_SIZE = 128;
     
     private static final char LEFT_DOUBLE_QUOTE = '\u201c';
     private static final char RIGHT_DOUBLE_QUOTE = '\u201d';
     private static final char LEFT_SINGLE_QUOTE = '\u2018';
     private static final char RIGHT_SINGLE_QUOTE = '\u2019';
 
-    private Random r;
+    private Randomness.Stream r;
+
+    /*
+     * Loaded from the file by the first call to getPhrasebook(), which the
+     * server makes when it starts
+     */
+    private final File phrasebookFile;
+    private volatile Phrasebook phrasebook;
+
+    /*
+     * Built from CONJUNCTIONS, which are initialized after this field
+     */
+    private final ClauseMatcher clauses;
 
     public DungeonNarrator() {
-        this(DEFAULT_RANDOM_SEED);
+        this(DEFAULT_PHRASEBOOK);
+    }
+    
+    /**
+     * @param phrasebook
+     *            The name of the phrasebook to use (e.g., "default" for
+     *            yaml/default.phrases.yml)
+     */
+    public DungeonNarrator(String phrasebook) {
+        this(new File(DungeonServer.YAML_PATH + phrasebook
+                + Phrasebook.FILE_SUFFIX), Randomness.stream(RANDOM_STREAM));
     }
     
-    public DungeonNarrator(long seed) {
-        this.r = new Random(seed);
+    public DungeonNarrator(File phrasebook, Randomness.Stream s) {
+        this.phrasebookFile = phrasebook;
+        this.r = s;
+        this.clauses = new ClauseMatcher(CONJUNCTIONS);
     }
 
     public static enum StringType {
@@ -37,29 +70,29 @@ public class DungeonNarrator {
         WITHOUT_ARTICLE;
     }
     
-    /**
-     * Represents a text replacement that should be made to
+    /*
+     * Per-thread scratch space for prettify(): the characters of the string
+     * being prettified, and the stack of quotation marks still open.
      */
-    private class Replacement {
-        private String from;
-        private String to;
-        
-        public Replacement(String from, String to) {
-            this.from = from;
-            this.to = to;
+    private static final ThreadLocal<char[][]> PRETTIFY_BUFFERS =
+            new ThreadLocal<char[][]>() {
+        protected char[][] initialValue() {
+            return new char[2][DEFAULT_BUFFER_SIZE];
         }
-    }
+    };
     
-    private final Replacement[] SPECIAL_REPLACEMENTS = {
-        new Replacement("'(\\d{2})s", "\u2019$1s"),
-        new Replacement("'([Ee])m", "\u2019$1m"),
-        new Replacement("([Nn])othin'", "$1othin\u2019"),
-        new Replacement("([Dd])oin'", "$1oin\u2019"),
-        new Replacement("([Ll])ookin'", "$1ookin\u2019"),
-        new Replacement("([Tt])hinkin'", "$1hinkin\u2019"),
-        new Replacement("'([Cc])ause", "\u2019$1ause"),
-        new Replacement("'([Cc])ept", "\u2019$1ept"),
-        new Replacement("'([Bb])out", "\u2019$1out"),
+    /*
+     * Words that begin with an apostrophe ('em, 'cause, 'cept, 'bout), and
+     * words that end with one (nothin', doin', lookin', thinkin'). Only the
+     * first letter may be in either case. Abbreviated decades ('90s) are
+     * handled separately.
+     */
+    private static final String[] APOSTROPHE_PREFIXED = {
+        "em", "cause", "cept", "bout"
+    };
+    
+    private static final String[] APOSTROPHE_SUFFIXED = {
+        "nothin", "doin", "lookin", "thinkin"
     };
     
     /**
@@ -67,6 +100,12 @@ public class DungeonNarrator {
      * this class), this method returns the string with prettier punctuation
      * and any other style rules.
      * 
+     * The string is scanned once. Each apostrophe is made a right single
+     * quote if it belongs to one of the special cases above or to a
+     * contraction (a word character, the apostrophe, and then anything but
+     * a space or punctuation); any other quotation mark opens or closes a
+     * quotation, depending on the quotations still open.
+     * 
      * @param s The narration string
      * @return A prettier string
      */
@@ -74,74 +113,105 @@ public class DungeonNarrator {
         if (original.indexOf('\'') == -1 && original.indexOf('\"') == -1)
             return original;
         
-        // replace all special cases
-        for (Replacement r : SPECIAL_REPLACEMENTS)
-            original = original.replaceAll(r.from, r.to);
-        
-        // replace single quotes in contractions with right single quotes
-        String processed = "";
-        Pattern p = Pattern.compile("\\w(')[^ !?.,]");
-        Matcher m = p.matcher(original);
-        int start = 0, end = -1;
-
-        while (m.find()) {
-            String group = m.group().replaceAll("'",
-                    String.valueOf(RIGHT_SINGLE_QUOTE));
-
-            end = m.start();
-            processed += original.substring(start, end);
-            processed += group;
-
-            start = m.end();
+        int n = original.length();
+        char[][] buffers = PRETTIFY_BUFFERS.get();
+        if (buffers[0].length < n) {
+            buffers[0] = new char[n];
+            buffers[1] = new char[n];
         }
         
-        end = original.length();
+        char[] buffer = buffers[0];
+        char[] stack = buffers[1];
+        int top = 0;
         
-        processed += original.substring(start, end);
+        original.getChars(0, n, buffer, 0);
         
-        // handle quotations more generally
-        char[] buffer = processed.toCharArray();
-        LinkedList<Character> stack = new LinkedList<Character>();
+        // contractions do not overlap: none may start before this index
+        int contractionEnd = 0;
         
-        for (int i = 0; i < buffer.length; i++) {
-            if (buffer[i] == '\'' || buffer[i] == '\"') {
-                Character top = stack.peek();
+        for (int i = 0; i < n; i++) {
+            if (i >= contractionEnd && i + 2 < n
+                    && isWordChar(buffer[i])
+                    && original.charAt(i + 1) == '\''
+                    && !isSpecialApostrophe(original, i + 1)
+                    && " !?.,".indexOf(original.charAt(i + 2)) == -1)
+            {
+                buffer[i + 1] = RIGHT_SINGLE_QUOTE;
+                if (buffer[i + 2] == '\'')
+                    buffer[i + 2] = RIGHT_SINGLE_QUOTE;
                 
-                if (top == null) {
-                    stack.push(buffer[i]);
-                    
-                    if (buffer[i] == '\'')
-                        buffer[i] = LEFT_SINGLE_QUOTE;
-                    else if (buffer[i] == '\"')
-                        buffer[i] = LEFT_DOUBLE_QUOTE;
-                    
-                    continue;
-                }
-                
-                // stack is not empty
-                
-                if (top == buffer[i]) {
-                    // found quote match
-                    stack.pop();
-                    
-                    if (buffer[i] == '\'')
-                        buffer[i] = RIGHT_SINGLE_QUOTE;
-                    else if (buffer[i] == '\"')
-                        buffer[i] = RIGHT_DOUBLE_QUOTE;
-                    
-                } else {
-                    // start new nesting level
-                    stack.push(buffer[i]);
-                    
-                    if (buffer[i] == '\'')
-                        buffer[i] = LEFT_SINGLE_QUOTE;
-                    else if (buffer[i] == '\"')
-                        buffer[i] = LEFT_DOUBLE_QUOTE;
-                }
+                contractionEnd = i + 3;
+                if (Character.isHighSurrogate(original.charAt(i + 2))
+                        && i + 3 < n
+                        && Character.isLowSurrogate(original.charAt(i + 3)))
+                    contractionEnd++;
+            }
+            
+            char c = buffer[i];
+            if (c != '\'' && c != '\"')
+                continue;
+            
+            if (c == '\'' && isSpecialApostrophe(original, i)) {
+                buffer[i] = RIGHT_SINGLE_QUOTE;
+                continue;
+            }
+            
+            if (top > 0 && stack[top - 1] == c) {
+                // found quote match
+                top--;
+                buffer[i] = c == '\'' ? RIGHT_SINGLE_QUOTE : RIGHT_DOUBLE_QUOTE;
+            } else {
+                // start new nesting level
+                stack[top++] = c;
+                buffer[i] = c == '\'' ? LEFT_SINGLE_QUOTE : LEFT_DOUBLE_QUOTE;
             }
         }
         
-        return String.valueOf(buffer);
+        return new String(buffer, 0, n);
+    }
+    
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                || (c >= '0' && c <= '9') || c == '_';
+    }
+    
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    /*
+     * Returns whether the apostrophe at index i belongs to one of the
+     * special cases.
+     */
+    private static boolean isSpecialApostrophe(String s, int i) {
+        int n = s.length();
+        
+        if (i + 3 < n && isDigit(s.charAt(i + 1)) && isDigit(s.charAt(i + 2))
+                && s.charAt(i + 3) == 's')
+            return true;
+        
+        for (String w : APOSTROPHE_PREFIXED)
+            if (i + w.length() < n && matchesWord(s, i + 1, w))
+                return true;
+        
+        for (String w : APOSTROPHE_SUFFIXED)
+            if (i - w.length() >= 0 && matchesWord(s, i - w.length(), w))
+                return true;
+        
+        return false;
+    }
+    
+    /*
+     * Returns whether the word appears at index i, allowing its first
+     * letter to be in either case.
+     */
+    private static boolean matchesWord(String s, int i, String w) {
+        char first = s.charAt(i);
+        if (first != w.charAt(0)
+                && first != Character.toUpperCase(w.charAt(0)))
+            return false;
+        
+        return s.regionMatches(i + 1, w, 1, w.length() - 1);
     }
 
     /**
@@ -214,46 +284,62 @@ public class DungeonNarrator {
      *         none
      */
     public static String describePlayers(Player perspective, Room r) {
-        String str = "";
+        return describePlayers(perspective, listPlayers(r));
+    }
 
-        int size;
-        if ((size = r.getNumberOfPlayers()) > 0) {
+    /**
+     * Returns the names of the players in a room, in the order in which
+     * describePlayers() would list them.
+     * 
+     * @param r
+     *            The room to search for players
+     * @return An array of the players' names
+     */
+    public static String[] listPlayers(Room r) {
+        ArrayList<String> names =
+                new ArrayList<String>(r.getNumberOfPlayers());
 
-            if (size == 1)
-                str += "Player ";
-            else
-                str += "Players ";
+        Iterator<Player> ps = r.getPlayers();
+        while (ps.hasNext())
+            names.add(toString(ps.next()));
 
-            Iterator<Player> ps = r.getPlayers();
+        return names.toArray(new String[names.size()]);
+    }
 
-            int i = 1;
-            while (ps.hasNext()) {
-                Player p = ps.next();
+    /**
+     * Like describePlayers(Player, Room), but lists players already named by
+     * listPlayers(), so that one list can be described from the perspective
+     * of each player in it.
+     * 
+     * @param perspective
+     *            The player to list as "you"
+     * @param names
+     *            The names of the players in the room
+     * @return A string listing the players, or null if there are none
+     */
+    public static String describePlayers(Player perspective, String[] names) {
+        int size = names.length;
+        if (size == 0)
+            return null; // if there are no players here
 
-                if (p == perspective)
-                    str += toString(p) + " (you)";
-                else
-                    str += toString(p);
+        String you = toString(perspective);
+        StringBuilder buf = new StringBuilder(32 + 16 * size);
 
-                if (i == size - 1) {
-                    if (size == 2)
-                        str += " and ";
-                    else
-                        str += ", and ";
-                } else if (i != size)
-                    str += ", ";
+        buf.append(size == 1 ? "Player " : "Players ");
 
-                i++;
-            }
+        for (int i = 1; i <= size; i++) {
+            String name = names[i - 1];
+            buf.append(name);
 
-            if (size == 1)
-                str += " is here.";
-            else
-                str += " are here.";
-        } else
-            return null; // if there are no players here
+            if (name.equals(you))
+                buf.append(" (you)");
 
-        return str;
+            appendListSeparator(buf, i, size);
+        }
+
+        buf.append(size == 1 ? " is here." : " are here.");
+
+        return buf.toString();
     }
 
     /**
@@ -268,33 +354,31 @@ public class DungeonNarrator {
         if (r.hasNoItems())
             return null;
 
-        String str = "";
-        Iterator<Item> items = r.getItems().iterator();
-        int size = r.getNumberOfItems();
+        Memo<String> memo = r.itemsDescription;
+        int count = memo.getModifications();
+        String str = memo.get(count);
+        if (str != null)
+            return str;
+
+        Collection<Item> items = r.getItems();
+        int size = items.size();
+        StringBuilder buf = new StringBuilder(32 + 16 * size);
 
         if (size == 1)
-            str += "There is one item here: ";
+            buf.append("There is one item here: ");
         else
-            str += "There are " + size + " items here: ";
+            buf.append("There are ").append(size).append(" items here: ");
 
         int i = 1;
-        while (items.hasNext()) {
-            Item item = items.next();
-            str += toString(item, StringType.WITH_INDEFINITE_ARTICLE);
-
-            if (i == size - 1) {
-                if (size == 2)
-                    str += " and ";
-                else
-                    str += ", and ";
-            } else if (i != size)
-                str += ", ";
-
-            i++;
+        for (Item item : items) {
+            buf.append(toString(item, StringType.WITH_INDEFINITE_ARTICLE));
+            appendListSeparator(buf, i++, size);
         }
 
-        str += ".";
+        buf.append('.');
 
+        str = buf.toString();
+        memo.put(count, str);
         return str;
     }
 
@@ -307,35 +391,28 @@ public class DungeonNarrator {
      * @return A string listing the items in the inventory
      */
     public static String describeInventory(Player p) {
-        Iterator<Item> items = p.getInventoryIterator();
-        int size = p.getInventorySize();
-
-        String str = "";
-
-        if (size == 0)
-            return "You are not carrying anything.";
-
-        Item item = items.next();
-
-        str += capitalize(toString(item, StringType.WITH_DEFINITE_ARTICLE));
-
-        if (size == 1)
-            return str + ".";
-        else
-            str += ", ";
-
-        while (true) {
-            item = items.next();
-
-            str += toString(item, StringType.WITH_DEFINITE_ARTICLE);
+        Memo<String> memo = p.inventoryDescription;
+        int count = memo.getModifications();
+        String str = memo.get(count);
+        if (str != null)
+            return str;
 
-            if (!items.hasNext()) {
-                str += ".";
-                break;
-            } else
-                str += ", ";
+        Iterator<Item> items = p.getInventoryIterator();
+        if (!items.hasNext())
+            str = "You are not carrying anything.";
+        else {
+            StringBuilder buf = new StringBuilder(DEFAULT_LIST_SIZE);
+            buf.append(capitalize(toString(items.next(),
+                    StringType.WITH_DEFINITE_ARTICLE)));
+
+            while (items.hasNext())
+                buf.append(", ").append(toString(items.next(),
+                        StringType.WITH_DEFINITE_ARTICLE));
+
+            str = buf.append('.').toString();
         }
 
+        memo.put(count, str);
         return str;
     }
     
@@ -413,36 +490,28 @@ public class DungeonNarrator {
      * @return A string listing the exits
      */
     public static String describeExits(Room r) {
-        Iterator<Map.Entry<Direction, Space>> exits = r
-                .getExitsIterator();
-        int size = r.getNumberOfExits();
-
-        String str = "";
-
-        if (size == 0)
-            return "There's no way out.";
-
-        Map.Entry<Direction, Space> exit = exits.next();
-
-        str += capitalize(toString(exit, StringType.WITH_DEFINITE_ARTICLE));
-
-        if (size == 1)
-            return str + ".";
-        else
-            str += ", ";
+        Memo<String> memo = r.exitsDescription;
+        int count = memo.getModifications();
+        String str = memo.get(count);
+        if (str != null)
+            return str;
 
-        while (true) {
-            exit = exits.next();
+        Iterator<Map.Entry<Direction, Space>> exits = r.getExitsIterator();
+        if (!exits.hasNext())
+            str = "There's no way out.";
+        else {
+            StringBuilder buf = new StringBuilder(DEFAULT_LIST_SIZE);
+            buf.append(capitalize(toString(exits.next(),
+                    StringType.WITH_DEFINITE_ARTICLE)));
 
-            str += toString(exit, StringType.WITH_DEFINITE_ARTICLE);
+            while (exits.hasNext())
+                buf.append(", ").append(toString(exits.next(),
+                        StringType.WITH_DEFINITE_ARTICLE));
 
-            if (!exits.hasNext()) {
-                str += ".";
-                break;
-            } else
-                str += ", ";
+            str = buf.append('.').toString();
         }
 
+        memo.put(count, str);
         return str;
     }
 
@@ -544,34 +613,20 @@ public class DungeonNarrator {
      * @return The array's string representation
      */
     public static String toNaturalList(Object[] a, boolean capitalizeFirst) {
-        int size = a.length;
-        String str = "";
-
-        if (size == 0)
+        if (a.length == 0)
             return "None.";
 
-        if (capitalizeFirst)
-            str += capitalize(a[0].toString());
-        else
-            str += a[0].toString();
+        StringBuilder buf = new StringBuilder(DEFAULT_LIST_SIZE);
 
-        if (size == 1)
-            return str + ".";
+        if (capitalizeFirst)
+            buf.append(capitalize(a[0].toString()));
         else
-            str += ", ";
-
-        for (int i = 1; i < a.length; i++) {
+            buf.append(a[0].toString());
 
-            str += a[i].toString();
-
-            if (!(i + 1 < a.length)) {
-                str += ".";
-                break;
-            } else
-                str += ", ";
-        }
+        for (int i = 1; i < a.length; i++)
+            buf.append(", ").append(a[i].toString());
 
-        return str;
+        return buf.append('.').toString();
     }
 
     /**
@@ -583,35 +638,20 @@ public class DungeonNarrator {
      * @return The collection's string representation
      */
     public static String toNaturalList(Collection<Item> a) {
-        int size = a.size();
-        String str = "";
-
-        if (size == 0)
+        if (a.isEmpty())
             return "No items.";
 
+        StringBuilder buf = new StringBuilder(DEFAULT_LIST_SIZE);
         Iterator<Item> iter = a.iterator();
-        Item i = iter.next();
-
-        str += capitalize(toString(i, StringType.WITHOUT_ARTICLE));
-
-        if (size == 1)
-            return str + ".";
-        else
-            str += ", ";
 
-        while (true) {
-            i = iter.next();
+        buf.append(capitalize(toString(iter.next(),
+                StringType.WITHOUT_ARTICLE)));
 
-            str += toString(i, StringType.WITHOUT_ARTICLE);
+        while (iter.hasNext())
+            buf.append(", ").append(toString(iter.next(),
+                    StringType.WITHOUT_ARTICLE));
 
-            if (!iter.hasNext()) {
-                str += ".";
-                break;
-            } else
-                str += ", ";
-        }
-
-        return str;
+        return buf.append('.').toString();
     }
 
     public static String toNaturalList(Item[] a) {
@@ -628,43 +668,31 @@ public class DungeonNarrator {
      */
     public static String toNaturalListWithArticles(List<Item> a) {
         int size = a.size();
-        String str = "";
-
         if (size == 0)
             return "No items.";
 
-        Iterator<Item> iter = a.iterator();
-
-        Item i = iter.next();
-        str += capitalize(toString(i, StringType.WITH_ARTICLE));
+        StringBuilder buf = new StringBuilder(DEFAULT_LIST_SIZE);
 
-        if (size == 1)
-            return str + ".";
-        else if (size == 2)
-            str += " and ";
-        else
-            str += ", ";
-
-        int count = 2;
-        while (iter.hasNext()) {
-            i = iter.next();
-
-            str += toString(i, StringType.WITH_ARTICLE);
-
-            if (count == size - 1) {
-                if (size == 2)
-                    str += " and ";
-                else
-                    str += ", and ";
-            } else if (count != size)
-                str += ", ";
-
-            count++;
+        int i = 1;
+        for (Item item : a) {
+            String str = toString(item, StringType.WITH_ARTICLE);
+            buf.append(i == 1 ? capitalize(str) : str);
+            appendListSeparator(buf, i++, size);
         }
 
-        str += ".";
+        return buf.append('.').toString();
+    }
 
-        return str;
+    /*
+     * Appends whatever follows the i-th (from 1) of size elements in a list
+     * like "a, b, and c" or "a and b".
+     */
+    private static void appendListSeparator(StringBuilder buf, int i,
+            int size) {
+        if (i == size - 1)
+            buf.append(size == 2 ? " and " : ", and ");
+        else if (i != size)
+            buf.append(", ");
     }
 
     public static String toNaturalListWithArticles(Item[] a) {
@@ -672,64 +700,55 @@ public class DungeonNarrator {
     }
 
     public String narrateMaterialization(String name) {
-        Phrase p = getRandomPhrase(MATERIALIZATION_PHRASES);
-        p.map(PhraseElement.SUBJECT, name);
-        return p.toString();
+        Phrase p = getRandomPhrase(Book.MATERIALIZATION);
+        return p.render(PhraseElement.SUBJECT, name);
     }
 
     public String narrateDematerialization(String name) {
-        Phrase p = getRandomPhrase(DEMATERIALIZATION_PHRASES);
-        p.map(PhraseElement.SUBJECT, name);
-        return p.toString();
+        Phrase p = getRandomPhrase(Book.DEMATERIALIZATION);
+        return p.render(PhraseElement.SUBJECT, name);
     }
 
     public String narrateMoveToRoom(String name, String dest) {
-        Phrase p = getRandomPhrase(MOVE_TO_ROOM_PHRASES);
-        p.map(PhraseElement.SUBJECT, name);
-        p.map(PhraseElement.DESTINATION, dest);
-        return p.toString();
+        Phrase p = getRandomPhrase(Book.MOVE_TO_ROOM);
+        return p.render(PhraseElement.SUBJECT, name,
+                PhraseElement.DESTINATION, dest);
     }
 
     public String narrateMoveHere(String name) {
-        Phrase p = getRandomPhrase(MOVE_HERE_PHRASES);
-        p.map(PhraseElement.SUBJECT, name);
-        return p.toString();
+        Phrase p = getRandomPhrase(Book.MOVE_HERE);
+        return p.render(PhraseElement.SUBJECT, name);
     }
 
     public String narrateMoveInDirection(String name, String dir) {
-        Phrase p = getRandomPhrase(MOVE_DIRECTION_PHRASES);
-        p.map(PhraseElement.SUBJECT, name);
-        p.map(PhraseElement.DIRECTION, dir);
-        return p.toString();
+        Phrase p = getRandomPhrase(Book.MOVE_DIRECTION);
+        return p.render(PhraseElement.SUBJECT, name,
+                PhraseElement.DIRECTION, dir);
     }
 
     public String narrateTake(String subj, String obj) {
-        Phrase p = getRandomPhrase(TAKE_PHRASES);
-        p.map(PhraseElement.SUBJECT, subj);
-        p.map(PhraseElement.OBJECT, obj);
-        return p.toString();
+        Phrase p = getRandomPhrase(Book.TAKE);
+        return p.render(PhraseElement.SUBJECT, subj,
+                PhraseElement.OBJECT, obj);
     }
 
     public String narrateDrop(String subj, String obj) {
-        Phrase p = getRandomPhrase(DROP_PHRASES);
-        p.map(PhraseElement.SUBJECT, subj);
-        p.map(PhraseElement.OBJECT, obj);
-        return p.toString();
+        Phrase p = getRandomPhrase(Book.DROP);
+        return p.render(PhraseElement.SUBJECT, subj,
+                PhraseElement.OBJECT, obj);
     }
 
     public String narrateGive(String subj, String obj, String ind) {
-        Phrase p = getRandomPhrase(GIVE_PHRASES);
-        p.map(PhraseElement.SUBJECT, subj);
-        p.map(PhraseElement.OBJECT, obj);
-        p.map(PhraseElement.INDIRECT_OBJECT, ind);
-        return p.toString();
+        Phrase p = getRandomPhrase(Book.GIVE);
+        return p.render(PhraseElement.SUBJECT, subj,
+                PhraseElement.OBJECT, obj,
+                PhraseElement.INDIRECT_OBJECT, ind);
     }
 
-    private String narrateSentenceWithVerb(String name, String words, Verb v) {
+    private String narrateSentenceWithVerb(String name, String words,
+            String verbString) {
         int k = getIndexOfClause(words);
 
-        String verbString = v.toString();
-
         if (k == -1)
             return name + " " + verbString + ", \"" + words + "\"";
         else
@@ -739,39 +758,50 @@ public class DungeonNarrator {
 
     public String narrateSay(String name, String words) {
         if (words.isEmpty()) {
-            Phrase p = getRandomPhrase(HESITATIONS);
-            p.map(PhraseElement.SUBJECT, name);
-            return p.toString();
+            Phrase p = getRandomPhrase(Book.HESITATION);
+            return p.render(PhraseElement.SUBJECT, name);
         }
 
-        Verb v;
+        String v;
         if (words.endsWith("?"))
-            v = getRandomVerb(INTERROGATIVE_VERBS);
+            v = getRandomVerb(Book.INTERROGATIVE_VERBS);
         else
-            v = getRandomVerb(SAY_VERBS);
+            v = getRandomVerb(Book.SAY_VERBS);
         return narrateSentenceWithVerb(name, words, v);
     }
 
     public String narrateYell(String name, String words) {
-        return narrateSentenceWithVerb(name, words, getRandomVerb(YELL_VERBS));
+        return narrateSentenceWithVerb(name, words,
+                getRandomVerb(Book.YELL_VERBS));
     }
 
     public String narrateDistantYell(String words) {
-        Phrase p = getRandomPhrase(DISTANT_YELL_PHRASES);
-        p.map(PhraseElement.QUOTATION, words);
-        return p.toString();
+        return narrateDistantYell(words, 1);
+    }
+
+    /**
+     * Narrates a yell heard from the specified number of rooms away. Yells
+     * from farther than the adjacent rooms are narrated more faintly.
+     */
+    public String narrateDistantYell(String words, int distance) {
+        Phrase p;
+        if (distance <= 1)
+            p = getRandomPhrase(Book.DISTANT_YELL);
+        else
+            p = getRandomPhrase(Book.FAINT_YELL);
+
+        return p.render(PhraseElement.QUOTATION, words);
     }
 
     public String narrateWhisper(String name, String words) {
         return narrateSentenceWithVerb(name, words,
-                getRandomVerb(WHISPER_VERBS));
+                getRandomVerb(Book.WHISPER_VERBS));
     }
 
     public String narrateUnheardWhisper(String who, String whom) {
-        Phrase p = getRandomPhrase(WHISPER_OBSERVER_PHRASES);
-        p.map(PhraseElement.SUBJECT, who);
-        p.map(PhraseElement.OBJECT, whom);
-        return p.toString();
+        Phrase p = getRandomPhrase(Book.WHISPER_OBSERVER);
+        return p.render(PhraseElement.SUBJECT, who,
+                PhraseElement.OBJECT, whom);
     }
     
     public String narrateWeatherChange(Weather prev, Weather next) {
@@ -803,50 +833,111 @@ public class DungeonNarrator {
     }
 
     /**
-     * Returns the starting index of a clause, or -1 if none was found.
+     * Returns a sentence telling a player that one of their needs has moved
+     * into the specified band, or null if the change goes unremarked.
      */
-    private int getIndexOfClause(String s) {
-        int k = -1;
-
-        for (Conjunction element : CONJUNCTIONS) {
-            if (element.getType() == ConjunctionType.SUBORDINATING) {
-                /* Check for inverted conjunction order */
-                String word = element.getWord();
-
-                if (s.toLowerCase().startsWith(word.toLowerCase()))
-                    /* Find first comma */
-                    k = s.indexOf(',');
-                else
-                    /* Subordinate clause does not come first */
-                    k = s.toLowerCase().indexOf(
-                            element.toString().toLowerCase());
-            } else
-                /* Conjunction is coordinating */
-                k = s.toLowerCase().indexOf(element.toString().toLowerCase());
+    public String narrateStatusChange(PlayerState.Kind k, int band) {
+        switch (k) {
+        case FATIGUE:
+            switch (band) {
+            case 2:
+                return "You yawn.";
+            case 3:
+                return "Your eyelids are getting heavy.";
+            case 4:
+                return "You can barely stay on your feet.";
+            default:
+                return null;
+            }
+        case HUNGER:
+            switch (band) {
+            case 2:
+                return "Your stomach growls.";
+            case 3:
+                return "Your stomach growls loudly.";
+            case 4:
+                return "You feel weak with hunger.";
+            default:
+                return null;
+            }
+        case THIRST:
+            switch (band) {
+            case 2:
+                return "Your mouth feels dry.";
+            case 3:
+                return "Your throat is parched.";
+            case 4:
+                return "You feel dizzy with thirst.";
+            default:
+                return null;
+            }
+        default:
+            return null;
+        }
+    }
 
+    /**
+     * Returns the starting index of a clause, or -1 if none was found. If
+     * the sentence begins with a subordinating conjunction, the clause starts
+     * at the first comma; otherwise it starts at the earliest conjunction.
+     */
+    private int getIndexOfClause(String s) {
+        if (clauses.opensWithSubordinate(s)) {
+            int k = s.indexOf(',');
             if (k != -1)
-                break;
+                return k;
         }
 
-        return k;
+        return clauses.indexOfBoundary(s);
     }
 
     /**
-     * Returns a random verb from a specified array of Verb objects.
+     * Returns a random verb from the specified book.
      */
-    private Verb getRandomVerb(Verb[] type) {
-        int i = this.r.nextInt(type.length);
-        return type[i];
+    private String getRandomVerb(Book b) {
+        return getRandomPhrase(b).render();
     }
 
     /**
-     * Returns a random phrase from a specified array of Phrase objects.
+     * Returns a random phrase from the specified book.
      */
-    private Phrase getRandomPhrase(Phrase[] type) {
+    private Phrase getRandomPhrase(Book b) {
+        Phrase[] type = getPhrasebook().get(b);
         int i = this.r.nextInt(type.length);
         return type[i];
     }
 
+    /**
+     * Returns this narrator's phrasebook, loading it if this is the first
+     * time it is needed.
+     * 
+     * @throws IllegalStateException
+     *             If the phrasebook cannot be loaded
+     */
+    public Phrasebook getPhrasebook() {
+        Phrasebook b = this.phrasebook;
+        if (b != null)
+            return b;
+
+        synchronized (this) {
+            if (this.phrasebook == null) {
+                try {
+                    this.phrasebook = Phrasebook.load(this.phrasebookFile);
+                } catch (IOException e) {
+                    throw new IllegalStateException("cannot read phrasebook "
+                            + this.phrasebookFile + " (" + e.getMessage()
+                            + ")", e);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalStateException("invalid phrasebook "
+                            + this.phrasebookFile + " (" + e.getMessage()
+                            + ")", e);
+                }
+            }
+
+            return this.phrasebook;
+        }
+    }
+
     /**
      * Types of conjunctions, used by the Conjunction class.
      */
@@ -936,291 +1027,96 @@ public class DungeonNarrator {
             new Conjunction("yet", ConjunctionType.COORDINATING) };
 
     /**
-     * Representation of a verb. Instantiations of this class are used by the
-     * narrator when a player speaks.
+     * Finds conjunctions in a sentence without regard to case. The
+     * conjunctions are compiled into two tries: one of the forms that mark a
+     * clause boundary inside a sentence (e.g., ", and"), and one of the
+     * subordinating conjunctions that may open a sentence. Finding the
+     * earliest boundary is then a single pass over the sentence, trying the
+     * trie at each character, with no lowercase copies of the sentence.
      */
-    private class Verb {
-        private String word;
-        private boolean splicing;
+    private static final class ClauseMatcher {
+        private final Node boundaries = new Node();
+        private final Node openers = new Node();
 
-        public Verb(String word) {
-            this.word = word;
-            this.splicing = true;
-        }
+        public ClauseMatcher(Conjunction[] conjunctions) {
+            for (Conjunction c : conjunctions) {
+                boundaries.add(c.toString());
 
-        public String toString() {
-            return this.word;
+                if (c.getType() == ConjunctionType.SUBORDINATING)
+                    openers.add(c.getWord());
+            }
         }
-    }
-
-    /**
-     * Synonyms for use when a player performs the 'say' action.
-     */
-    private final Verb[] SAY_VERBS = {
-        new Verb("says"),
-        new Verb("reports"),
-        new Verb("states"),
-        new Verb("utters"),
-        new Verb("adds"),
-        new Verb("declares"),
-        new Verb("mentions"),
-        new Verb("pronounces"),
-        new Verb("remarks")
-    };
-
-    /**
-     * Synonyms for use when a player performs the 'say' action and ends the
-     * sentence with a question mark.
-     */
-    private final Verb[] INTERROGATIVE_VERBS = {
-        new Verb("asks"),
-        new Verb("inquires"),
-        new Verb("queries"),
-        new Verb("challenges"),
-        new Verb("quizzes"),
-        new Verb("wonders")
-    };
-
-    /**
-     * Synonyms for use when a player performs the 'yell' action.
-     */
-    private final Verb[] YELL_VERBS = {
-        new Verb("yells"),
-        new Verb("shouts"),
-        new Verb("shrieks"),
-        new Verb("exclaims"),
-        new Verb("cries"),
-        new Verb("squeals"),
-        new Verb("roars"),
-        new Verb("screams")
-    };
 
-    /**
-     * Synonyms for use when a player performs the 'whisper' action.
-     */
-    private final Verb[] WHISPER_VERBS = {
-        new Verb("whispers"),
-        new Verb("mumbles"),
-        new Verb("murmurs"),
-        new Verb("mutters")
-    };
+        /**
+         * Returns the index of the earliest clause boundary, or -1 if the
+         * sentence has none.
+         */
+        public int indexOfBoundary(String s) {
+            for (int i = 0; i < s.length(); i++)
+                if (boundaries.matches(s, i))
+                    return i;
 
-    /**
-     * Types of phrase elements, to be used by the Phrase class below when
-     * replacing conversion specifications in a format string.
-     */
-    private static enum PhraseElement {
-        SUBJECT,            // "Martin" in: "Martin walks northeast."
-        OBJECT,             // "the key" in: "Peter takes the key."
-        INDIRECT_OBJECT,    // "the ball" in: "Greg gives Mia the ball."
-        DIRECTION,          // "south" in: "Sarah goes south."
-        DESTINATION,        // "the hallway" in: "Sana exits to the hallway."
-        QUOTATION,          // "Hey!" in: "Kathryn yells, 'Hey!'"
-    }
-
-    /**
-     * Representation of a phrase that contains conversion specifications.
-     */
-    private class Phrase {
-        private String phrase;
-        private PhraseElement[] elements;
-        private EnumMap<PhraseElement, String> mappings;
-
-        public Phrase(String s, PhraseElement... nouns) {
-            this.mappings = new EnumMap<PhraseElement, String>(
-                    PhraseElement.class);
-            this.phrase = s;
-            this.elements = nouns;
+            return -1;
         }
 
-        public void map(PhraseElement pe, String s) {
-            this.mappings.put(pe, s);
-        }
-        
-        public String toString() {
-            if (this.elements.length != this.mappings.size())
-                throw new IllegalArgumentException("too few mappings");
-
-            String[] mappedStrings = new String[this.elements.length];
-
-            for (int i = 0; i < this.elements.length; i++)
-                mappedStrings[i] = this.mappings.get(elements[i]);
-
-            return String.format(this.phrase, (Object[]) mappedStrings);
+        public boolean opensWithSubordinate(String s) {
+            return openers.matches(s, 0);
         }
-    }
-
-    /**
-     * Phrases printed when a player observes a player connecting to the server
-     * and appearing in the room.
-     */
-    private final Phrase[] MATERIALIZATION_PHRASES = {
-            new Phrase("%s appears out of thin air.", PhraseElement.SUBJECT),
-            new Phrase("%s materializes out of thin air.",
-                    PhraseElement.SUBJECT),
-            new Phrase("%s appears.", PhraseElement.SUBJECT),
-            new Phrase("Out of nowhere, %s appears.", PhraseElement.SUBJECT)
-    };
-
-    /**
-     * Phrases printed when a player observes a player disconnecting and
-     * disappearing from the room.
-     */
-    private final Phrase[] DEMATERIALIZATION_PHRASES = {
-            new Phrase("%s disappears.", PhraseElement.SUBJECT),
-            new Phrase("%s dematerializes.", PhraseElement.SUBJECT),
-            new Phrase("In a flash, %s is gone.", PhraseElement.SUBJECT)
-    };
-
-    /**
-     * Phrases printed when a player uses 'say' with no sentence (e.g.,
-     * "John remains silent.").
-     */
-    private final Phrase[] HESITATIONS = {
-            new Phrase("%s remains silent.", PhraseElement.SUBJECT),
-            new Phrase("%s hesitates to speak.", PhraseElement.SUBJECT),
-            new Phrase("%s doesn't say anything.", PhraseElement.SUBJECT),
-            new Phrase("%s stays quiet.", PhraseElement.SUBJECT),
-            new Phrase("%s stays silent.", PhraseElement.SUBJECT),
-            new Phrase("%s keeps quiet.", PhraseElement.SUBJECT),
-            new Phrase("%s hesitates.", PhraseElement.SUBJECT),
-            new Phrase("%s balks.", PhraseElement.SUBJECT)
-    };
-
-    /**
-     * Phrases printed when another player enters the room the observing player
-     * is in.
-     */
-    private final Phrase[] MOVE_HERE_PHRASES = {
-            new Phrase("%s enters.", PhraseElement.SUBJECT),
-            new Phrase("%s arrives.", PhraseElement.SUBJECT)
-    };
-
-    /**
-     * Phrases for use when a player moves into a space whose name other players
-     * cannot or are not allowed to see (e.g., "Martina moves northeast.").
-     */
-    private final Phrase[] MOVE_DIRECTION_PHRASES = {
-            new Phrase("%s moves %s.", PhraseElement.SUBJECT,
-                    PhraseElement.DIRECTION),
-            new Phrase("%s walks %s.", PhraseElement.SUBJECT,
-                    PhraseElement.DIRECTION),
-            new Phrase("%s goes %s.", PhraseElement.SUBJECT,
-                    PhraseElement.DIRECTION),
-            new Phrase("%s wanders %s.", PhraseElement.SUBJECT,
-                    PhraseElement.DIRECTION),
-            new Phrase("%s leaves to the %s.", PhraseElement.SUBJECT,
-                    PhraseElement.DIRECTION),
-            new Phrase("%s exits to the %s.", PhraseElement.SUBJECT,
-                    PhraseElement.DIRECTION)
-    };
 
-    /**
-     * Phrases printed when a player moves into an adjacent room (e.g.,
-     * "Friedrich enters the broom closet.").
-     */
-    private final Phrase[] MOVE_TO_ROOM_PHRASES = {
-            new Phrase("%s walks to %s.", PhraseElement.SUBJECT,
-                    PhraseElement.DESTINATION),
-            new Phrase("%s enters %s.", PhraseElement.SUBJECT,
-                    PhraseElement.DESTINATION),
-            new Phrase("%s goes to %s.", PhraseElement.SUBJECT,
-                    PhraseElement.DESTINATION),
-            new Phrase("%s moves to %s.", PhraseElement.SUBJECT,
-                    PhraseElement.DESTINATION)
-    };
-
-    /**
-     * Phrases printed when a player takes an item (e.g., "Lauren takes the
-     * broomstick.").
-     */
-    private final Phrase[] TAKE_PHRASES = {
-            new Phrase("%s takes %s.", PhraseElement.SUBJECT,
-                    PhraseElement.OBJECT),
-            new Phrase("%s picks up %s.", PhraseElement.SUBJECT,
-                    PhraseElement.OBJECT),
-            new Phrase("%s stashes %s.", PhraseElement.SUBJECT,
-                    PhraseElement.OBJECT),
-            new Phrase("%s grabs %s.", PhraseElement.SUBJECT,
-                    PhraseElement.OBJECT)
-    };
+        private static final class Node {
+            private char[] keys = new char[0];
+            private Node[] children = new Node[0];
+            private boolean terminal;
+
+            private void add(String word) {
+                Node n = this;
+                for (int i = 0; i < word.length(); i++) {
+                    char c = Character.toLowerCase(word.charAt(i));
+                    Node next = n.child(c);
+
+                    if (next == null) {
+                        int size = n.keys.length;
+                        n.keys = Arrays.copyOf(n.keys, size + 1);
+                        n.children = Arrays.copyOf(n.children, size + 1);
+                        n.keys[size] = c;
+                        n.children[size] = next = new Node();
+                    }
+
+                    n = next;
+                }
 
-    /**
-     * Phrases printed when a player gives an item to another player (e.g.,
-     * "Stephen gives the cake to Ryan.").
-     */
-    private final Phrase[] GIVE_PHRASES = {
-            new Phrase("%s gives %s to %s.", PhraseElement.SUBJECT,
-                    PhraseElement.OBJECT, PhraseElement.INDIRECT_OBJECT),
-            new Phrase("%s gives %s %s.", PhraseElement.SUBJECT,
-                    PhraseElement.INDIRECT_OBJECT, PhraseElement.OBJECT),
-            new Phrase("%s hands %s %s.", PhraseElement.SUBJECT,
-                    PhraseElement.INDIRECT_OBJECT, PhraseElement.OBJECT),
-            new Phrase("%s lets %s have %s.", PhraseElement.SUBJECT,
-                    PhraseElement.INDIRECT_OBJECT, PhraseElement.OBJECT)
-    };
+                n.terminal = true;
+            }
 
-    /**
-     * Phrases printed when a player drops an item (e.g., "Kenneth leaves the
-     * ring.").
-     */
-    private final Phrase[] DROP_PHRASES = {
-            new Phrase("%s drops %s.", PhraseElement.SUBJECT,
-                    PhraseElement.OBJECT),
-            new Phrase("%s releases %s.", PhraseElement.SUBJECT,
-                    PhraseElement.OBJECT),
-            new Phrase("%s lets go of %s.", PhraseElement.SUBJECT,
-                    PhraseElement.OBJECT),
-            new Phrase("%s leaves %s.", PhraseElement.SUBJECT,
-                    PhraseElement.OBJECT)
-    };
+            private Node child(char c) {
+                for (int i = 0; i < keys.length; i++)
+                    if (keys[i] == c)
+                        return children[i];
 
-    /**
-     * Phrases printed when a player observes one player whispering to another
-     * (e.g., "Jason whispers to Raymond.").
-     */
-    private final Phrase[] WHISPER_OBSERVER_PHRASES = {
-            new Phrase("%s mutters something to %s.", PhraseElement.SUBJECT,
-                    PhraseElement.OBJECT),
-            new Phrase("%s whispers to %s.", PhraseElement.SUBJECT,
-                    PhraseElement.OBJECT),
-            new Phrase("%s mumbles something only %s can hear.",
-                    PhraseElement.SUBJECT, PhraseElement.OBJECT),
-            new Phrase("%s tells %s something, but you are unable to hear it.",
-                    PhraseElement.SUBJECT, PhraseElement.OBJECT),
-            new Phrase("%s speaks softly to %s.", PhraseElement.SUBJECT,
-                    PhraseElement.OBJECT),
-            new Phrase("%s says something to %s.", PhraseElement.SUBJECT,
-                    PhraseElement.OBJECT)
-    };
+                return null;
+            }
 
-    /**
-     * Phrases printed when there is player movement in adjacent rooms.
-     */
-    private final Phrase[] DISTANT_MOVEMENT_PHRASES = {
-            new Phrase("Footsteps in the distance."),
-            new Phrase("Footsteps."),
-            new Phrase("Distant footsteps."),
-            new Phrase("There is movement nearby."),
-            new Phrase("Movement can be heard."),
-            new Phrase("Someone's moving."),
-            new Phrase("Sounds of movement.")
-    };
+            /*
+             * Returns true if any word in this trie occurs at index i.
+             */
+            private boolean matches(String s, int i) {
+                Node n = this;
+                while (!n.terminal) {
+                    if (i == s.length())
+                        return false;
+
+                    n = n.child(Character.toLowerCase(s.charAt(i++)));
+                    if (n == null)
+                        return false;
+                }
 
-    /**
-     * Phrases printed when a faraway player yells.
-     */
-    private final Phrase[] DISTANT_YELL_PHRASES = {
-            new Phrase("Someone in the distance yells, \"%s\"",
-                    PhraseElement.QUOTATION),
-            new Phrase("Someone shouts, \"%s\"", PhraseElement.QUOTATION),
-            new Phrase("Someone yells, \"%s\"", PhraseElement.QUOTATION),
-            new Phrase("In the distance someone shouts, \"%s\"",
-                    PhraseElement.QUOTATION),
-            new Phrase("\"%s\", from a distance.", PhraseElement.QUOTATION)
-    };
+                return true;
+            }
+        }
+    }
 
     public static void main(String[] args) {
+        Randomness.setSeed(DEFAULT_RANDOM_SEED);
         DungeonNarrator n = new DungeonNarrator();
         System.out.println(n.narrateMoveToRoom("James", "the hallway"));
         System.out.println(n.narrateMoveInDirection("Sana", "northeast"));
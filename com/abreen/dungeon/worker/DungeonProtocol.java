@@ -6,9 +6,11 @@ import com.abreen.dungeon.exceptions.*;
 import com.abreen.dungeon.model.*;
 import com.abreen.dungeon.util.*;
 import com.abreen.dungeon.DungeonServer;
+import com.abreen.dungeon.state.DungeonGameTick;
 
 public class DungeonProtocol {
     private static final int DEFAULT_BUFFER_SIZE = 2048;
+    private static final long NANOS_PER_MICRO = 1000L;
     
     public static enum Action {
 
@@ -99,6 +101,19 @@ public class DungeonProtocol {
          */
         WHO("", "who"),
 
+        /**
+         * The command a player issues to get a listing of game tick timings
+         * (whole ticks, and the timer tasks run in them by task class).
+         */
+        STATS("", "stats"),
+
+        /**
+         * The command a client issues to report the width of its terminal,
+         * so that messages can be wrapped for it (0 turns wrapping off).
+         * Clients send it when they connect and when they are resized.
+         */
+        WIDTH("<columns>", "width"),
+
         /**
          * The command a player issues to disconnect.
          */
@@ -114,6 +129,10 @@ public class DungeonProtocol {
             this.otherNames = otherNames;
         }
 
+        public String getName() {
+            return this.name;
+        }
+
         public boolean isThisAction(String str) {
             if (str.equalsIgnoreCase(name))
                 return true;
@@ -270,6 +289,12 @@ public class DungeonProtocol {
         case WHO:
             processWho(p, tokens);
             return;
+        case STATS:
+            processStats(p);
+            return;
+        case WIDTH:
+            processWidth(p, tokens);
+            return;
         case HELP:
         default:
             processHelp(p);
@@ -326,10 +351,9 @@ public class DungeonProtocol {
         String indirectObject = s.substring(indirectIndex + 4).trim();
 
         try {
-            u.give(p, object, indirectObject);
-
+            Player recipient = u.give(p, object, indirectObject);
             String narr = n.narrateGive(DungeonNarrator.toString(p), object,
-                    indirectObject);
+                    DungeonNarrator.toString(recipient));
 
             Iterator<Player> ps = u.getPlayersInRoom(p.here());
             int size = u.getNumberOfPlayersInRoom(p.here());
@@ -481,7 +505,7 @@ public class DungeonProtocol {
         String message = s.substring(0, indirectIndex);
         String recipient = s.substring(indirectIndex + 4).trim();
 
-        if (p.getName().equals(recipient)) {
+        if (u.findPlayer(recipient) == p) {
             String oops = "OK, you murmur something completely inaudible.";
             d.addNarrationEvent(p.getWriter(), oops);
             return;
@@ -497,7 +521,22 @@ public class DungeonProtocol {
     }
 
     private static void processWho(Player p, ArrayList<String> tokens) {
-        Iterator<Player> ps = u.getPlayers();
+        String who = getTokensAfterAction(tokens);
+        Iterator<Player> ps;
+
+        if (who == null) {
+            ps = u.getPlayers();
+        } else {
+            Player whom = u.findPlayer(who);
+
+            if (whom == null) {
+                String oops = "There is no player \"" + who + "\" online.";
+                d.addNotificationEvent(p.getWriter(), oops);
+                return;
+            }
+
+            ps = Collections.singletonList(whom).iterator();
+        }
 
         StringBuilder buf = new StringBuilder(DEFAULT_BUFFER_SIZE);
         
@@ -526,6 +565,75 @@ public class DungeonProtocol {
 
     }
 
+    private static void processStats(Player p) {
+        DungeonGameTick t = DungeonServer.tick;
+        StringBuilder buf = new StringBuilder(DEFAULT_BUFFER_SIZE);
+        
+        String fmt = "%-24s%s\n";
+        int numChevrons = DungeonDispatcher.CHEVRONS.length();
+        String fmt2 = Strings.repeat(" ", numChevrons) + fmt;
+        
+        buf.append(String.format(fmt, "TICKS", String.format(
+                "%d run, %d skipped, %d in bulk", t.getNumberOfTicks(),
+                t.getNumberOfSkippedTicks(), t.getNumberOfBulkTicks())));
+        buf.append(String.format(fmt2, "tick",
+                t.getDurations().summarize(NANOS_PER_MICRO, "us")));
+        buf.append(String.format(fmt2, "overrun",
+                t.getOverruns().summarize(NANOS_PER_MICRO, "us")));
+        
+        /*
+         * Most expensive kinds of timer task first, by total time.
+         */
+        ArrayList<Map.Entry<Class<?>, Histogram>> costs =
+                new ArrayList<Map.Entry<Class<?>, Histogram>>(
+                        u.getTimerCosts().entrySet());
+        Collections.sort(costs, new Comparator<Map.Entry<Class<?>,
+                Histogram>>() {
+            public int compare(Map.Entry<Class<?>, Histogram> a,
+                    Map.Entry<Class<?>, Histogram> b) {
+                Histogram x = a.getValue(), y = b.getValue();
+                return Double.compare(y.getMean() * y.getCount(),
+                        x.getMean() * x.getCount());
+            }
+        });
+        
+        long numberOfTasks = 0;
+        for (Map.Entry<Class<?>, Histogram> e : costs)
+            numberOfTasks += e.getValue().getCount();
+        
+        buf.append(String.format(fmt, "TIMER TASKS", numberOfTasks + " run"));
+        for (Map.Entry<Class<?>, Histogram> e : costs) {
+            // anonymous classes have no simple name
+            String name = e.getKey().getSimpleName();
+            if (name.isEmpty())
+                name = e.getKey().getName();
+            
+            buf.append(String.format(fmt2, name,
+                    e.getValue().summarize(NANOS_PER_MICRO, "us")));
+        }
+        
+        buf.append(String.format(fmt, "LOOK CACHE", u.getLooks()));
+        
+        d.addNotificationEvent(p.getWriter(), buf);
+    }
+
+    private static void processWidth(Player p, ArrayList<String> tokens) {
+        String oops = "Specify a width from " + ClientWriter.MIN_WIDTH
+                + " to " + ClientWriter.MAX_WIDTH + " columns, or 0 for none.";
+
+        if (tokens.size() != 2 || !(p.getWriter() instanceof ClientWriter)) {
+            d.addNotificationEvent(p.getWriter(), oops);
+            return;
+        }
+
+        try {
+            int columns = Integer.parseInt(tokens.get(1));
+            ((ClientWriter) p.getWriter()).setWidth(columns);
+        } catch (IllegalArgumentException e) {
+            d.addNotificationEvent(p.getWriter(), oops);
+        }
+    }
+
     private static void processYell(Player p, ArrayList<String> tokens) {
         String tokensAfter = getTokensAfterAction(tokens, false);
 
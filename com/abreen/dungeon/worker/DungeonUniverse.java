@@ -8,143 +8,386 @@ import com.abreen.dungeon.exceptions.*;
 import com.abreen.dungeon.model.*;
 import com.abreen.dungeon.random.*;
 import com.abreen.dungeon.state.DayPart;
+import com.abreen.dungeon.state.PlayerState;
 import com.abreen.dungeon.state.Stateful;
 import com.abreen.dungeon.state.TimeOfDay;
+import com.abreen.dungeon.state.TimingWheel;
 import com.abreen.dungeon.state.Weather;
+import com.abreen.dungeon.util.Histogram;
+import com.abreen.dungeon.util.LruCache;
 import com.abreen.dungeon.util.Strings;
 
 public class DungeonUniverse implements Serializable, Stateful {
     private static final long serialVersionUID = 1L;
     
     private static final double WEATHER_INTERVAL = 0.00005;
+    
+    private static final Randomness.Stream WEATHER_RANDOM =
+            Randomness.stream("weather");
+    private static final Distribution WEATHER_DELAYS =
+            new Exponential(WEATHER_INTERVAL, WEATHER_RANDOM);
+    private static final Distribution WEATHER_CHOICES =
+            new Uniform(0, Weather.values().length, WEATHER_RANDOM);
+    
+    public static final int DEFAULT_YELL_DISTANCE = 1;
+    public static final int LOOK_CACHE_SIZE = 256;
 
     private Collection<Room> rooms;
-    private Hashtable<String, Player> players;
+    private Hashtable<String, Room> roomsByID;
+    private Collection<Zone> zones;
+    private Collection<Region> regions;
+    private PlayerDirectory players;
+
     private Room spawnPoint;
     private boolean doWeather;
     private int timescale;
+    private int yellDistance = DEFAULT_YELL_DISTANCE;
     
-    public final TimeOfDay tod;
+    public volatile TimeOfDay tod;
+    
+    /*
+     * The number of game ticks since the universe was created, and the
+     * events scheduled to happen at later ticks.
+     */
+    private volatile long ticks;
+    private transient TimingWheel timers;
+    
+    /*
+     * Rendered "look here" output, shared by every player who looks at the
+     * same room under the same conditions.
+     */
+    private transient LruCache<RoomView, RoomView> looks;
     
-    public Weather weather;
-    public TimeOfDay weatherChangeTime;
 
     /*
      * Loads a boring universe.
      */
     public DungeonUniverse() {
         this.rooms = new ArrayList<Room>();
-        this.players = new Hashtable<String, Player>();
+        this.roomsByID = new Hashtable<String, Room>();
+        this.zones = new ArrayList<Zone>();
+        this.players = new PlayerDirectory();
         this.tod = new TimeOfDay(12, 0, 0);
-        this.weather = randomWeather();
-        this.weatherChangeTime = randomChangeTime();
+        this.timers = new TimingWheel();
+        this.looks = new LruCache<RoomView, RoomView>(LOOK_CACHE_SIZE);
+        this.regions = new ArrayList<Region>();
     }
 
     public DungeonUniverse(Room spawn, boolean weather, int timescale,
-            Collection<Room> sps)
+            Collection<Room> sps, Collection<Zone> zs, Collection<Region> rs)
     {
         this();
         this.spawnPoint = spawn;
         this.doWeather = weather;
         this.timescale = timescale;
         this.rooms = sps;
+        this.zones = zs;
+        this.regions = rs;
+        
+        for (Room r : sps) {
+            this.roomsByID.put(r.getID(), r);
+            r.getAdjacentRooms();
+        }
+        
+        for (Region r : rs) {
+            r.setWeather(randomWeather());
+            
+            if (weather)
+                scheduleWeatherChange(r);
+        }
     }
 
     public boolean doWeather() {
         return this.doWeather;
     }
 
-    public boolean hasSavedState(String name) {
-        return false;
+    public Room getRoomByID(String id) {
+        return this.roomsByID.get(id);
+    }
+    
+    /**
+     * Returns the number of game ticks since the universe was created.
+     */
+    public long getTicks() {
+        return this.ticks;
+    }
+    
+    /**
+     * Returns the tick the universe's timers have reached. This is the same
+     * as getTicks(), except while advance() is running the timers that fall
+     * due, when it is the tick of the timer being run.
+     */
+    public long getTimerTick() {
+        return this.timers.getNow();
+    }
+    
+    /**
+     * Runs the task after the specified number of game ticks.
+     */
+    public TimingWheel.Timer schedule(long ticks, Runnable task) {
+        return this.timers.schedule(ticks, task);
+    }
+    
+    public boolean cancel(TimingWheel.Timer t) {
+        return this.timers.cancel(t);
+    }
+    
+    /**
+     * Returns how long the timer tasks run so far took, by task class.
+     */
+    public Map<Class<?>, Histogram> getTimerCosts() {
+        return this.timers.getCosts();
     }
     
     public int getTimescale() {
         return this.timescale;
     }
     
+    /**
+     * Sets how many rooms away a yell can be heard. A distance of 1 means
+     * only adjacent rooms hear it.
+     */
+    public void setYellDistance(int hops) {
+        if (hops < 0)
+            throw new IllegalArgumentException("yell distance must be >= 0");
+        
+        this.yellDistance = hops;
+    }
+    
+    public int getYellDistance() {
+        return this.yellDistance;
+    }
+    
     public void tick() {
-        tod.addSecond();
+        advance(1);
+    }
+    
+    /**
+     * Advances the universe by the specified number of seconds at once,
+     * running any events that fall due on the way.
+     */
+    public void advance(long seconds) {
+        tod = tod.plusSeconds(seconds);
+        ticks += seconds;
+        timers.advanceTo(ticks);
+    }
+    
+    /*
+     * Each region's weather changes on its own schedule.
+     */
+    private void scheduleWeatherChange(Region r) {
+        schedule(randomChangeDelay(), new WeatherChange(r));
+    }
+    
+    private class WeatherChange implements Runnable {
+        private final Region region;
         
-        if (doWeather) {
-            if (tod.equals(weatherChangeTime)) {
-                Weather oldWeather = weather;
-                weather = randomWeather();
-                
-                if (weather != oldWeather) {
-                    // send narration of the weather change
-                    String narr = DungeonServer.narrator.narrateWeatherChange(
-                            oldWeather, weather);
-                    Iterator<Player> ps = players.values().iterator();
-                    PrintWriter[] ws =
-                            DungeonDispatcher.playerIteratorToWriterArray(
-                                    ps, players.size());
-                    
-                    DungeonServer.events.addNarrationEvent(ws, narr);
-                }
-                
-                weatherChangeTime = randomChangeTime();
-            }
+        WeatherChange(Region r) {
+            this.region = r;
+        }
+        
+        public void run() {
+            changeWeather(region);
+        }
+        
+        public String toString() {
+            return "weather change in " + region.getName();
         }
     }
     
-    private TimeOfDay randomChangeTime() {
-        Exponential e = new Exponential(WEATHER_INTERVAL);
-        int delta = (int)e.next();
+    private void changeWeather(Region r) {
+        Weather oldWeather = r.getWeather();
+        Weather newWeather = randomWeather();
+        r.setWeather(newWeather);
         
-        TimeOfDay tod2 = new TimeOfDay(tod);
-        tod2.addSeconds(delta);
+        if (newWeather != oldWeather) {
+            // send narration of the weather change to those outside
+            PrintWriter[] ws =
+                    DungeonDispatcher.roomsToWriterArray(r.getOutdoorRooms());
+            
+            if (ws.length > 0) {
+                String narr = DungeonServer.narrator.narrateWeatherChange(
+                        oldWeather, newWeather);
+                DungeonServer.events.addNarrationEvent(ws, narr);
+            }
+        }
         
-        return tod2;
+        scheduleWeatherChange(r);
+    }
+    
+    private int randomChangeDelay() {
+        return (int)WEATHER_DELAYS.next();
     }
     
     private Weather randomWeather() {
         Weather[] ws = Weather.values();
-        Uniform u = new Uniform(0, ws.length);
-        int index = (int)u.next();
+        int index = (int)WEATHER_CHOICES.next();
         return ws[index];
     }
 
-    /*
-     * If the universe kept the saved state of a player, this method will
-     * deserialize the object and assign it a fresh output stream writer.
+    /**
+     * Writes the state of a player (including their inventory and the ID of
+     * the room they are in) to the specified stream. The player is not
+     * removed from the universe.
+     * 
+     * @param p
+     *            The player to save
+     * @param out
+     *            The stream to which to write the player
+     * @throws IOException
+     *             If the player could not be written
      */
-    public synchronized Player restore(String name, PrintWriter w) {
-        return null;
+    public void save(Player p, OutputStream out) throws IOException {
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(p);
+        oos.flush();
+    }
+    
+    /**
+     * Reads a player previously written by save() and places them into this
+     * universe, in the room they were saved in. If this universe has no room
+     * with that ID, the player is placed at the spawn point.
+     * 
+     * @param in
+     *            The stream from which to read the player
+     * @param w
+     *            The writer of the player's new connection
+     * @return The admitted player
+     * @throws IOException
+     *             If a player could not be read from the stream
+     * @throws NameTakenException
+     *             If a connected player has the same name, ignoring case
+     */
+    public Player admit(InputStream in, PrintWriter w) throws IOException {
+        Player p;
+        try {
+            p = (Player) new ObjectInputStream(in).readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("not a saved player", e);
+        } catch (ClassCastException e) {
+            throw new IOException("not a saved player", e);
+        }
+        
+        Room r = null;
+        if (p.getSavedRoomID() != null)
+            r = getRoomByID(p.getSavedRoomID());
+        if (r == null)
+            r = this.spawnPoint;
+        
+        /*
+         * Catch the player up on the game time that passed while they were
+         * away, in one step. Ticks are counted rather than wall-clock time,
+         * since the universe stands still while no one is playing.
+         */
+        long away = this.ticks - p.getSavedTick();
+        if (away > 0)
+            p.advance(away);
+        
+        synchronized (r.getZone()) {
+            if (!this.players.add(p))
+                throw new NameTakenException();
+            
+            p.move(r);
+            p.setWriter(w);
+            r.addPlayer(p);
+            setTicking(p, true);
+        }
+        
+        return p;
     }
 
     /*
      * If this player is new, a new Player object will be created and an output
-     * stream writer will be assigned to it.
+     * stream writer will be assigned to it. Throws NameTakenException if a
+     * connected player has the same name, ignoring case.
      */
-    public synchronized Player register(String name, PrintWriter w) {
-        Player p = new Player(name, this.spawnPoint, w);
-        this.players.put(name, p);
-        this.spawnPoint.addPlayer(p);
-        return p;
+    public Player register(String name, PrintWriter w) {
+        synchronized (this.spawnPoint.getZone()) {
+            Player p = new Player(name, this.spawnPoint, w);
+            if (!this.players.add(p))
+                throw new NameTakenException();
+            
+            this.spawnPoint.addPlayer(p);
+            setTicking(p, true);
+            return p;
+        }
+    }
+
+    /*
+     * Removes the player from the universe.
+     */
+    public void retire(Player p) {
+        synchronized (p.here().getZone()) {
+            p.here().removePlayer(p);
+            this.players.remove(p);
+            setTicking(p, false);
+        }
     }
 
     /*
-     * Removes the player from the universe and serializes the player object.
+     * Starts (or stops) the player's needs changing with time. Stateful
+     * items work out their state from the universe's clock when asked, so
+     * they need nothing here.
      */
-    public synchronized void retire(Player p) {
-        // serialize the Player object and save to disk
-        p.here().removePlayer(p);
-        this.players.remove(p.getName());
+    private static void setTicking(final Player p, boolean ticking) {
+        if (ticking) {
+            p.state.setListener(new PlayerState.Listener() {
+                public void bandCrossed(PlayerState.Kind k, int band) {
+                    String s = DungeonServer.narrator.narrateStatusChange(k,
+                            band);
+                    PrintWriter w = p.getWriter();
+                    
+                    if (s != null && w != null)
+                        DungeonServer.events.addNarrationEvent(w, s);
+                }
+            });
+            p.state.resume();
+        } else {
+            p.state.pause();
+            p.state.setListener(null);
+        }
     }
 
     public Room getSpawn() {
         return this.spawnPoint;
     }
 
-    public synchronized Iterator<Player> getPlayers() {
-        return this.players.values().iterator();
+    /**
+     * Finds a connected player by name, ignoring case. The name may be
+     * abbreviated as long as no other player's name starts the same way.
+     * 
+     * @param name
+     *            The name, or abbreviated name, of the player
+     * @return The player, or null if there is no such player
+     */
+    public Player findPlayer(String name) {
+        return this.players.resolve(name);
+    }
+
+    public Iterator<Player> getPlayers() {
+        return this.players.iterator();
     }
     
     public synchronized Iterator<Room> getRooms() {
         return this.rooms.iterator();
     }
+    
+    public synchronized Iterator<Zone> getZones() {
+        return this.zones.iterator();
+    }
+    
+    public synchronized Iterator<Region> getRegions() {
+        return this.regions.iterator();
+    }
 
-    public synchronized int getNumberOfPlayers() {
+    /**
+     * Returns the cache of rendered room descriptions, for its statistics.
+     */
+    public LruCache<?, ?> getLooks() {
+        return this.looks;
+    }
+
+    public int getNumberOfPlayers() {
         return this.players.size();
     }
 
@@ -163,7 +406,7 @@ public class DungeonUniverse implements Serializable, Stateful {
      * @throws LockedDoorException
      *             When a player does not have the correct key
      */
-    public synchronized Room movePlayer(Player p, String dest)
+    public Room movePlayer(Player p, String dest)
             throws NoSuchDirectionException, NoSuchExitException,
             LockedDoorException
     {
@@ -172,23 +415,7 @@ public class DungeonUniverse implements Serializable, Stateful {
         Space destination = p.here().to(direction);
 
         if (destination instanceof Room) {
-
-            /*
-             * Do narration for players watching this player enter. We do this
-             * before the player actually moves so that the call to
-             * getPlayersInRoom does not include the moving player.
-             */
-            Iterator<Player> ps = getPlayersInRoom((Room) destination);
-            int n = getNumberOfPlayersInRoom((Room) destination);
-
-            String playerString = DungeonNarrator.toString(p);
-            String moveHere = DungeonServer.narrator
-                    .narrateMoveHere(playerString);
-            DungeonServer.events.addNarrationEvent(
-                    DungeonDispatcher.playerIteratorToWriterArray(ps, n),
-                    moveHere);
-
-            unconditionallyMovePlayer(p, (Room) destination);
+            enterRoom(p, (Room) destination);
             return (Room) destination;
         } else if (destination instanceof Door) {
             Door d = (Door) destination;
@@ -201,22 +428,7 @@ public class DungeonUniverse implements Serializable, Stateful {
                     DungeonServer.events.addNotificationEvent(p.getWriter(),
                             unlock);
 
-                    /*
-                     * As before, do narration for players watching this player
-                     * enter. We do this before the player actually moves so
-                     * that the call to getPlayersInRoom does not include the
-                     * moving player.
-                     */
-                    Iterator<Player> ps = getPlayersInRoom(otherSide);
-                    int n = getNumberOfPlayersInRoom(otherSide);
-
-                    String playerString = DungeonNarrator.toString(p);
-                    String moveHere = DungeonServer.narrator
-                            .narrateMoveHere(playerString);
-                    DungeonServer.events.addNarrationEvent(DungeonDispatcher
-                            .playerIteratorToWriterArray(ps, n), moveHere);
-
-                    unconditionallyMovePlayer(p, otherSide);
+                    enterRoom(p, otherSide);
                     return otherSide;
                 } else
                     throw new LockedDoorException();
@@ -228,7 +440,44 @@ public class DungeonUniverse implements Serializable, Stateful {
     }
 
     /**
-     * Simply moves a player to another room.
+     * Narrates a player's arrival and moves them into the specified room.
+     * If the room is in another zone, this is the hand-off between the two
+     * zones; both zone locks are held for the duration of the move.
+     * 
+     * @param p
+     *            The player to move
+     * @param dest
+     *            The room into which the player is moved
+     */
+    private void enterRoom(Player p, Room dest) {
+        Zone from = p.here().getZone(), to = dest.getZone();
+
+        synchronized (Zone.first(from, to)) {
+            synchronized (Zone.second(from, to)) {
+
+                /*
+                 * Do narration for players watching this player enter. We do
+                 * this before the player actually moves so that the call to
+                 * getPlayersInRoom does not include the moving player.
+                 */
+                Iterator<Player> ps = getPlayersInRoom(dest);
+                int n = getNumberOfPlayersInRoom(dest);
+
+                String playerString = DungeonNarrator.toString(p);
+                String moveHere = DungeonServer.narrator
+                        .narrateMoveHere(playerString);
+                DungeonServer.events.addNarrationEvent(
+                        DungeonDispatcher.playerIteratorToWriterArray(ps, n),
+                        moveHere);
+
+                unconditionallyMovePlayer(p, dest);
+            }
+        }
+    }
+
+    /**
+     * Simply moves a player to another room. The caller must hold the locks
+     * of the zones of both rooms.
      * 
      * @param p
      *            The player to move
@@ -272,6 +521,29 @@ public class DungeonUniverse implements Serializable, Stateful {
             return true;
     }
 
+    /**
+     * Finds a player by name (see findPlayer()) and checks that they are in
+     * the specified room.
+     * 
+     * @param name
+     *            The name, or abbreviated name, of the player
+     * @param r
+     *            The room the player must be in
+     * @return The player
+     * @throws NoSuchPlayerException
+     *             If there is no such player in the room
+     */
+    public Player findPlayerInRoom(String name, Room r)
+            throws NoSuchPlayerException
+    {
+        Player p = findPlayer(name);
+
+        if (p == null || p.here() != r)
+            throw new NoSuchPlayerException();
+
+        return p;
+    }
+
     /**
      * Gets iterator over players in the specified room.
      * 
@@ -279,7 +551,7 @@ public class DungeonUniverse implements Serializable, Stateful {
      *            The room in which to look for players
      * @return An iterator over players in the specified room
      */
-    public synchronized Iterator<Player> getPlayersInRoom(Room r) {
+    public Iterator<Player> getPlayersInRoom(Room r) {
         return r.getPlayers();
     }
 
@@ -290,7 +562,7 @@ public class DungeonUniverse implements Serializable, Stateful {
      *            The room in which to look for players
      * @return The number of players in the room
      */
-    public synchronized int getNumberOfPlayersInRoom(Room r) {
+    public int getNumberOfPlayersInRoom(Room r) {
         return r.getNumberOfPlayers();
     }
 
@@ -311,29 +583,28 @@ public class DungeonUniverse implements Serializable, Stateful {
 
         if (s.equals("here")) {
             Room here = p.here();
-            String name = DungeonNarrator.toString(here).toUpperCase();
-            
-            if (tod.getDayPart() == DayPart.NIGHT)
-                name += " (NIGHT)";
-            
-            String desc = DungeonNarrator.describe(here);
-            
-            int numChevrons = DungeonDispatcher.CHEVRONS.length();
-            String indent = Strings.repeat(" ", numChevrons);
+            RoomView key = new RoomView(here, tod.getDayPart(),
+                    here.getRegion().getWeather(), here.getVersion());
             
-            String detail = here.getDetail(tod.getDayPart(), weather);
-            desc += "\n" + indent + detail;
+            RoomView view = looks.get(key);
+            if (view == null) {
+                view = key.render();
+                looks.put(view, view);
+            }
             
-            DungeonServer.events.addNotificationEvent(p.getWriter(), name);
-            DungeonServer.events.addNotificationEvent(p.getWriter(), desc);
+            DungeonServer.events.addNotificationEvent(p.getWriter(),
+                    view.name);
+            DungeonServer.events.addNotificationEvent(p.getWriter(),
+                    view.description);
 
-            desc = DungeonNarrator.describePlayers(p, p.here());
+            /* The only part that depends on who is looking */
+            String desc = DungeonNarrator.describePlayers(p, view.players);
             if (desc != null)
                 DungeonServer.events.addNotificationEvent(p.getWriter(), desc);
 
-            desc = DungeonNarrator.describeItems(p.here());
-            if (desc != null)
-                DungeonServer.events.addNotificationEvent(p.getWriter(), desc);
+            if (view.items != null)
+                DungeonServer.events.addNotificationEvent(p.getWriter(),
+                        view.items);
 
         } else {
             /*
@@ -357,125 +628,189 @@ public class DungeonUniverse implements Serializable, Stateful {
         }
     }
 
-    public synchronized void say(Player p, String s) {
-        String narr;
-        String playerString = DungeonNarrator.toString(p);
-        if (s == null)
-            narr = DungeonServer.narrator.narrateSay(playerString, "");
-        else
-            narr = DungeonServer.narrator.narrateSay(playerString, s);
-
-        Iterator<Player> ps = getPlayersInRoom(p.here());
-        int n = getNumberOfPlayersInRoom(p.here());
-        DungeonServer.events.addNarrationEvent(
-                DungeonDispatcher.playerIteratorToWriterArray(ps, n), narr);
+    public void say(Player p, String s) {
+        synchronized (p.here().getZone()) {
+            String narr;
+            String playerString = DungeonNarrator.toString(p);
+            if (s == null)
+                narr = DungeonServer.narrator.narrateSay(playerString, "");
+            else
+                narr = DungeonServer.narrator.narrateSay(playerString, s);
 
+            Iterator<Player> ps = getPlayersInRoom(p.here());
+            int n = getNumberOfPlayersInRoom(p.here());
+            DungeonServer.events.addNarrationEvent(
+                    DungeonDispatcher.playerIteratorToWriterArray(ps, n), narr);
+        }
     }
 
-    public synchronized void whisper(Player p, String message, String recipient)
+    public void whisper(Player p, String message, String recipient)
             throws NoSuchPlayerException
     {
-        Iterator<Player> ps = p.here().getPlayers();
-        ArrayList<Player> observers = new ArrayList<Player>();
+        synchronized (p.here().getZone()) {
+            Player otherPlayer = findPlayerInRoom(recipient, p.here());
 
-        Player otherPlayer = null;
-        while (ps.hasNext()) {
-            Player thisPlayer = ps.next();
+            Iterator<Player> ps = p.here().getPlayers();
+            ArrayList<Player> observers = new ArrayList<Player>();
 
-            if (thisPlayer.getName().equals(recipient))
-                otherPlayer = thisPlayer;
-            else if (thisPlayer != p)
-                observers.add(thisPlayer);
-        }
-
-        if (otherPlayer == null)
-            throw new NoSuchPlayerException();
+            while (ps.hasNext()) {
+                Player thisPlayer = ps.next();
 
-        String secretNarr = DungeonServer.narrator.narrateWhisper(
-                DungeonNarrator.toString(p), message);
-        String publicNarr = DungeonServer.narrator.narrateUnheardWhisper(
-                DungeonNarrator.toString(p),
-                DungeonNarrator.toString(otherPlayer));
+                if (thisPlayer != otherPlayer && thisPlayer != p)
+                    observers.add(thisPlayer);
+            }
 
-        ArrayList<Player> secrets = new ArrayList<Player>();
-        secrets.add(p);
-        secrets.add(otherPlayer);
+            String secretNarr = DungeonServer.narrator.narrateWhisper(
+                    DungeonNarrator.toString(p), message);
+            String publicNarr = DungeonServer.narrator.narrateUnheardWhisper(
+                    DungeonNarrator.toString(p),
+                    DungeonNarrator.toString(otherPlayer));
 
-        DungeonServer.events.addNarrationEvent(
-                DungeonDispatcher.playerIteratorToWriterArray(
-                        secrets.iterator(), secrets.size()), secretNarr);
+            ArrayList<Player> secrets = new ArrayList<Player>();
+            secrets.add(p);
+            secrets.add(otherPlayer);
 
-        DungeonServer.events.addNarrationEvent(
-                DungeonDispatcher.playerIteratorToWriterArray(
-                        observers.iterator(), observers.size()), publicNarr);
+            DungeonServer.events.addNarrationEvent(
+                    DungeonDispatcher.playerIteratorToWriterArray(
+                            secrets.iterator(), secrets.size()), secretNarr);
 
+            DungeonServer.events.addNarrationEvent(
+                    DungeonDispatcher.playerIteratorToWriterArray(
+                            observers.iterator(), observers.size()),
+                    publicNarr);
+        }
     }
 
-    public synchronized void yell(Player p, String s) {
-        String playerString = DungeonNarrator.toString(p);
-        String narr1 = DungeonServer.narrator.narrateYell(playerString, s);
-        String narr2 = DungeonServer.narrator.narrateDistantYell(s);
+    public void yell(Player p, String s) {
+        synchronized (p.here().getZone()) {
+            String playerString = DungeonNarrator.toString(p);
+            String narr = DungeonServer.narrator.narrateYell(playerString, s);
 
-        Iterator<Player> ps = getPlayersInRoom(p.here());
-        int n = getNumberOfPlayersInRoom(p.here());
+            Iterator<Player> ps = getPlayersInRoom(p.here());
+            int n = getNumberOfPlayersInRoom(p.here());
 
-        /* Get players in adjacent rooms */
-        Iterator<Room> adjacentRooms = p.here().getAdjacentRooms();
-        ArrayList<Player> farPlayers = new ArrayList<Player>();
+            DungeonServer.events.addNarrationEvent(
+                    DungeonDispatcher.playerIteratorToWriterArray(ps, n),
+                    narr);
 
-        while (adjacentRooms.hasNext()) {
-            Room r = adjacentRooms.next();
-            Iterator<Player> playersHere = r.getPlayers();
+            /*
+             * Notify players in the surrounding rooms, more faintly the
+             * farther away they are. Those rooms may be in other zones,
+             * whose locks are not taken; their player maps are safe to read
+             * concurrently.
+             */
+            Room[][] rings = p.here().getNeighbourhood(this.yellDistance);
 
-            while (playersHere.hasNext())
-                farPlayers.add(playersHere.next());
-        }
+            for (int d = 0; d < rings.length; d++) {
+                PrintWriter[] ws =
+                        DungeonDispatcher.roomsToWriterArray(rings[d]);
 
-        DungeonServer.events.addNarrationEvent(
-                DungeonDispatcher.playerIteratorToWriterArray(ps, n), narr1);
-        DungeonServer.events.addNarrationEvent(
-                DungeonDispatcher.playerIteratorToWriterArray(
-                        farPlayers.iterator(), farPlayers.size()), narr2);
+                if (ws.length == 0)
+                    continue;
 
+                narr = DungeonServer.narrator.narrateDistantYell(s, d + 1);
+                DungeonServer.events.addNarrationEvent(ws, narr);
+            }
+        }
     }
 
-    public synchronized Item take(Player p, String s)
+    public Item take(Player p, String s)
             throws NoSuchItemException
     {
-        Item i = p.here().removeItemByName(s);
-        p.addToInventory(i);
-        return i;
+        synchronized (p.here().getZone()) {
+            Item i = p.here().removeItemByName(s);
+            p.addToInventory(i);
+            return i;
+        }
     }
 
-    public synchronized Item drop(Player p, String s)
+    public Item drop(Player p, String s)
             throws NoSuchItemException
     {
-        Item i = p.dropFromInventoryByName(s);
-        p.here().addItem(i);
-        return i;
+        synchronized (p.here().getZone()) {
+            Item i = p.dropFromInventoryByName(s);
+            p.here().addItem(i);
+            return i;
+        }
     }
 
-    public synchronized Item give(Player p, String object, String whom)
+    /**
+     * Moves an item from a player's inventory to that of another player in
+     * the same room.
+     * 
+     * @return The player to whom the item was given, as resolved from the
+     *         specified name while the room's zone was locked
+     */
+    public Player give(Player p, String object, String whom)
             throws NoSuchItemException, NoSuchPlayerException
     {
+        synchronized (p.here().getZone()) {
+            Player otherPlayer = findPlayerInRoom(whom, p.here());
 
-        Item i = p.dropFromInventoryByName(object);
-        Iterator<Player> ps = p.here().getPlayers();
+            Item i = p.dropFromInventoryByName(object);
+            otherPlayer.addToInventory(i);
 
-        Player otherPlayer = null;
-        while (ps.hasNext()) {
-            Player thisPlayer = ps.next();
-            if (thisPlayer.getName().equals(whom)) {
-                otherPlayer = thisPlayer;
-                break;
-            }
+            return otherPlayer;
         }
+    }
 
-        if (otherPlayer == null)
-            throw new NoSuchPlayerException();
+    /**
+     * A room as it looks under given conditions. A view is identified by the
+     * room, the part of the day, the weather and the room's version, so a
+     * view goes stale (and is eventually evicted) as soon as any of those
+     * changes. The players are kept as a list of names, so that each viewer
+     * can be picked out of it.
+     */
+    private static final class RoomView {
+        private final Room room;
+        private final DayPart part;
+        private final Weather weather;
+        private final int version;
+
+        private String name;
+        private String description;
+        private String[] players;
+        private String items;
+
+        private RoomView(Room r, DayPart h, Weather w, int v) {
+            this.room = r;
+            this.part = h;
+            this.weather = w;
+            this.version = v;
+        }
+
+        private RoomView render() {
+            name = DungeonNarrator.toString(room).toUpperCase();
+            
+            if (part == DayPart.NIGHT)
+                name += " (NIGHT)";
+            
+            int numChevrons = DungeonDispatcher.CHEVRONS.length();
+            String indent = Strings.repeat(" ", numChevrons);
+            
+            description = DungeonNarrator.describe(room);
+            
+            String detail = room.getDetail(part, weather);
+            if (detail != null)
+                description += "\n" + indent + detail;
+            players = DungeonNarrator.listPlayers(room);
+            items = DungeonNarrator.describeItems(room);
+            
+            return this;
+        }
 
-        otherPlayer.addToInventory(i);
+        public boolean equals(Object o) {
+            if (!(o instanceof RoomView))
+                return false;
 
-        return i;
+            RoomView v = (RoomView) o;
+            return room == v.room && part == v.part && weather == v.weather
+                    && version == v.version;
+        }
+
+        public int hashCode() {
+            return ((room.hashCode() * 31 + part.hashCode()) * 31
+                    + weather.hashCode()) * 31 + version;
+        }
     }
 }
@@ -0,0 +1,498 @@
+package com.abreen.dungeon.worker;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * The vocabulary used by the narrator, loaded from a phrasebook file (e.g.,
+ * yaml/default.phrases.yml) so that each world can have its own voice. A
+ * phrasebook is a YAML mapping from the name of each book (e.g., "take") to
+ * a list of phrases, in which named slots like {subject} stand for the words
+ * the narrator fills in.
+ *
+ * Phrasebooks are checked and compiled when loaded: every book must be
+ * present and nonempty, and every phrase may use only the slots its book
+ * allows. The compiled phrasebook is then saved next to the file, so that
+ * later loads of an unchanged phrasebook skip the parsing.
+ */
+public final class Phrasebook implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final String FILE_SUFFIX = ".phrases.yml";
+    public static final String CACHE_SUFFIX = ".cache";
+
+    private static final int DEFAULT_BUFFER_SIZE = 2048;
+
+    /**
+     * Types of phrase elements, to be used by the Phrase class below when
+     * filling in the slots of a phrase.
+     */
+    public static enum PhraseElement {
+        /* "Martin" in: "Martin walks northeast." */
+        SUBJECT("subject"),
+
+        /* "the key" in: "Peter takes the key." */
+        OBJECT("object"),
+
+        /* "Mia" in: "Greg gives Mia the ball." */
+        INDIRECT_OBJECT("indirectObject"),
+
+        /* "south" in: "Sarah goes south." */
+        DIRECTION("direction"),
+
+        /* "the hallway" in: "Sana exits to the hallway." */
+        DESTINATION("destination"),
+
+        /* "Hey!" in: "Kathryn yells, 'Hey!'" */
+        QUOTATION("quotation");
+
+        private String key;
+
+        PhraseElement(String s) {
+            this.key = s;
+        }
+
+        public static PhraseElement fromString(String s) {
+            if (s == null)
+                throw new IllegalArgumentException("slot must be non-null");
+
+            for (PhraseElement e : PhraseElement.values())
+                if (e.key.equals(s))
+                    return e;
+
+            return null;
+        }
+
+        public String toString() {
+            return this.key;
+        }
+    }
+
+    /**
+     * The books in a phrasebook, each with the slots its phrases may use.
+     */
+    public static enum Book {
+        MATERIALIZATION("materialization", PhraseElement.SUBJECT),
+        DEMATERIALIZATION("dematerialization", PhraseElement.SUBJECT),
+        HESITATION("hesitation", PhraseElement.SUBJECT),
+        MOVE_HERE("moveHere", PhraseElement.SUBJECT),
+        MOVE_DIRECTION("moveDirection", PhraseElement.SUBJECT,
+                PhraseElement.DIRECTION),
+        MOVE_TO_ROOM("moveToRoom", PhraseElement.SUBJECT,
+                PhraseElement.DESTINATION),
+        TAKE("take", PhraseElement.SUBJECT, PhraseElement.OBJECT),
+        GIVE("give", PhraseElement.SUBJECT, PhraseElement.OBJECT,
+                PhraseElement.INDIRECT_OBJECT),
+        DROP("drop", PhraseElement.SUBJECT, PhraseElement.OBJECT),
+        WHISPER_OBSERVER("whisperObserver", PhraseElement.SUBJECT,
+                PhraseElement.OBJECT),
+        DISTANT_MOVEMENT("distantMovement"),
+        DISTANT_YELL("distantYell", PhraseElement.QUOTATION),
+        FAINT_YELL("faintYell", PhraseElement.QUOTATION),
+        SAY_VERBS("sayVerbs"),
+        INTERROGATIVE_VERBS("interrogativeVerbs"),
+        YELL_VERBS("yellVerbs"),
+        WHISPER_VERBS("whisperVerbs");
+
+        private String key;
+        private PhraseElement[] slots;
+
+        Book(String s, PhraseElement... slots) {
+            this.key = s;
+            this.slots = slots;
+        }
+
+        public static Book fromString(String s) {
+            if (s == null)
+                throw new IllegalArgumentException("book must be non-null");
+
+            for (Book b : Book.values())
+                if (b.key.equals(s))
+                    return b;
+
+            return null;
+        }
+
+        public boolean allows(PhraseElement e) {
+            for (PhraseElement slot : slots)
+                if (slot == e)
+                    return true;
+
+            return false;
+        }
+
+        public String toString() {
+            return this.key;
+        }
+    }
+
+    /*
+     * Per-thread builder used to render phrases.
+     */
+    private static final ThreadLocal<StringBuilder> PHRASE_BUFFERS =
+            new ThreadLocal<StringBuilder>() {
+        protected StringBuilder initialValue() {
+            return new StringBuilder(DEFAULT_BUFFER_SIZE);
+        }
+    };
+
+    /**
+     * Representation of a phrase containing named slots (e.g., "{subject}
+     * takes {object}."). The phrase is split into literal text and slots
+     * when it is compiled, and is never changed after that, so one Phrase
+     * may be rendered by any number of threads at once. The strings to put
+     * in the slots are passed to render() along with the elements they
+     * stand for.
+     *
+     * A literal brace is written "{{".
+     */
+    public static final class Phrase implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] literals;        // one more than the slots
+        private final PhraseElement[] slots;
+
+        public Phrase(String s) {
+            ArrayList<String> parts = new ArrayList<String>();
+            ArrayList<PhraseElement> elements = new ArrayList<PhraseElement>();
+            StringBuilder literal = new StringBuilder();
+
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+
+                if (c != '{') {
+                    literal.append(c);
+                    continue;
+                }
+
+                if (i + 1 < s.length() && s.charAt(i + 1) == '{') {
+                    literal.append('{');
+                    i++;
+                    continue;
+                }
+
+                int end = s.indexOf('}', i);
+                if (end == -1)
+                    throw new IllegalArgumentException("unclosed slot");
+
+                String name = s.substring(i + 1, end);
+                PhraseElement e = PhraseElement.fromString(name);
+                if (e == null)
+                    throw new IllegalArgumentException("unknown slot {"
+                            + name + "}");
+
+                parts.add(literal.toString());
+                literal.setLength(0);
+                elements.add(e);
+                i = end;
+            }
+
+            parts.add(literal.toString());
+
+            this.literals = parts.toArray(new String[parts.size()]);
+            this.slots = elements.toArray(new PhraseElement[elements.size()]);
+        }
+
+        public String render() {
+            return render(null, null, null, null, null, null);
+        }
+
+        public String render(PhraseElement e1, String s1) {
+            return render(e1, s1, null, null, null, null);
+        }
+
+        public String render(PhraseElement e1, String s1,
+                PhraseElement e2, String s2)
+        {
+            return render(e1, s1, e2, s2, null, null);
+        }
+
+        public String render(PhraseElement e1, String s1,
+                PhraseElement e2, String s2, PhraseElement e3, String s3)
+        {
+            if (slots.length == 0)
+                return literals[0];
+
+            StringBuilder buf = PHRASE_BUFFERS.get();
+            buf.setLength(0);
+
+            for (int i = 0; i < slots.length; i++) {
+                buf.append(literals[i]);
+
+                PhraseElement e = slots[i];
+                if (e == e1)
+                    buf.append(s1);
+                else if (e == e2)
+                    buf.append(s2);
+                else if (e == e3)
+                    buf.append(s3);
+                else
+                    throw new IllegalArgumentException("too few mappings");
+            }
+
+            buf.append(literals[slots.length]);
+            return buf.toString();
+        }
+
+        public String toString() {
+            return render();
+        }
+    }
+
+    /*
+     * Indexed by book ordinal.
+     */
+    private final Phrase[][] books;
+
+    /*
+     * Identify the version of the file this phrasebook was compiled from.
+     */
+    private final long sourceLength;
+    private final long sourceModified;
+
+    /*
+     * The books and slots this phrasebook was compiled against (see
+     * describeBooks()), so that a cache saved before the books changed is
+     * not used.
+     */
+    private final String format;
+
+    private Phrasebook(Phrase[][] books, long length, long modified) {
+        this.books = books;
+        this.sourceLength = length;
+        this.sourceModified = modified;
+        this.format = describeBooks();
+    }
+
+    /*
+     * Returns a string naming every book, in order, with the slots it
+     * allows (e.g., "take{subject,object};...").
+     */
+    private static String describeBooks() {
+        StringBuilder buf = new StringBuilder();
+
+        for (Book b : Book.values()) {
+            buf.append(b.key).append('{');
+
+            for (int i = 0; i < b.slots.length; i++) {
+                if (i > 0)
+                    buf.append(',');
+                buf.append(b.slots[i]);
+            }
+
+            buf.append("};");
+        }
+
+        return buf.toString();
+    }
+
+    /**
+     * Returns the phrases in the specified book. The array is shared, so
+     * callers must not modify it.
+     */
+    public Phrase[] get(Book b) {
+        return this.books[b.ordinal()];
+    }
+
+    /**
+     * Loads the phrasebook from the specified file, using the compiled copy
+     * saved next to it if the file has not changed since. A newly compiled
+     * phrasebook is saved for next time, if possible.
+     *
+     * @throws IllegalArgumentException
+     *             If the phrasebook is invalid
+     */
+    public static Phrasebook load(File source) throws IOException {
+        File cache = new File(source.getPath() + CACHE_SUFFIX);
+
+        Phrasebook b = readCache(cache, source);
+        if (b != null)
+            return b;
+
+        long length = source.length(), modified = source.lastModified();
+
+        Reader in = new InputStreamReader(new FileInputStream(source),
+                "UTF-8");
+        try {
+            b = compile(new Yaml().load(in), length, modified);
+        } finally {
+            in.close();
+        }
+
+        writeCache(cache, b);
+        return b;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Phrasebook compile(Object doc, long length, long modified)
+    {
+        if (!(doc instanceof Map))
+            throw new IllegalArgumentException("phrasebook must be a mapping");
+
+        Map map = (Map) doc;
+
+        for (Object key : map.keySet())
+            if (Book.fromString(String.valueOf(key)) == null)
+                throw new IllegalArgumentException("unknown book '" + key
+                        + "'");
+
+        Phrase[][] books = new Phrase[Book.values().length][];
+
+        for (Book b : Book.values()) {
+            Object o = map.get(b.key);
+
+            if (!(o instanceof List) || ((List) o).isEmpty())
+                throw new IllegalArgumentException("book '" + b
+                        + "' must be a nonempty list of phrases");
+
+            List list = (List) o;
+            Phrase[] phrases = new Phrase[list.size()];
+
+            for (int i = 0; i < phrases.length; i++) {
+                String s = String.valueOf(list.get(i));
+
+                try {
+                    phrases[i] = new Phrase(s);
+
+                    for (PhraseElement e : phrases[i].slots)
+                        if (!b.allows(e))
+                            throw new IllegalArgumentException("slot {" + e
+                                    + "} is not allowed here");
+
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("book '" + b
+                            + "', phrase \"" + s + "\": " + e.getMessage());
+                }
+            }
+
+            books[b.ordinal()] = phrases;
+        }
+
+        return new Phrasebook(books, length, modified);
+    }
+
+    /*
+     * Returns the phrasebook saved in the cache, or null if there is none or
+     * it was compiled from a different version of the source or against
+     * different books.
+     */
+    private static Phrasebook readCache(File cache, File source) {
+        if (!cache.isFile())
+            return null;
+
+        try {
+            ObjectInputStream in = new CacheInputStream(
+                    new BufferedInputStream(new FileInputStream(cache)));
+            try {
+                Phrasebook b = (Phrasebook) in.readObject();
+
+                if (b.sourceLength != source.length()
+                        || b.sourceModified != source.lastModified()
+                        || !describeBooks().equals(b.format)
+                        || !b.isWellFormed())
+                    return null;
+
+                return b;
+            } finally {
+                in.close();
+            }
+
+        } catch (Exception e) {
+            /* An unreadable cache is recompiled and overwritten */
+            return null;
+        }
+    }
+
+    /*
+     * Writes the cache to a temporary file next to it, then renames that
+     * over the cache, so that a server reading the cache at the same time
+     * never sees it half written.
+     */
+    private static void writeCache(File cache, Phrasebook b) {
+        File temp = null;
+
+        try {
+            temp = File.createTempFile(cache.getName(), ".tmp",
+                    cache.getAbsoluteFile().getParentFile());
+
+            ObjectOutputStream out = new ObjectOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeObject(b);
+            } finally {
+                out.close();
+            }
+
+            Files.move(temp.toPath(), cache.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException e) {
+            /* The cache is only an optimization */
+            if (temp != null)
+                temp.delete();
+        }
+    }
+
+    /*
+     * Returns whether every book has phrases, and every phrase has one
+     * more literal than it has slots, as compile() makes them. A cache
+     * that was changed by hand may not.
+     */
+    private boolean isWellFormed() {
+        if (books == null || books.length != Book.values().length)
+            return false;
+
+        for (Phrase[] phrases : books) {
+            if (phrases == null || phrases.length == 0)
+                return false;
+
+            for (Phrase p : phrases)
+                if (p == null || p.literals == null || p.slots == null
+                        || p.literals.length != p.slots.length + 1)
+                    return false;
+        }
+
+        return true;
+    }
+
+    /*
+     * Reads only the classes a compiled phrasebook is made of, so that a
+     * cache file that was replaced with some other serialized object
+     * cannot make the server create it.
+     */
+    private static final class CacheInputStream extends ObjectInputStream {
+        private static final Set<String> ALLOWED = new HashSet<String>(
+                Arrays.asList(Phrasebook.class.getName(),
+                        Phrase.class.getName(),
+                        PhraseElement.class.getName(),
+                        Enum.class.getName(),
+                        String.class.getName(),
+                        Phrase[][].class.getName(),
+                        Phrase[].class.getName(),
+                        PhraseElement[].class.getName(),
+                        String[].class.getName()));
+
+        CacheInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+            if (!ALLOWED.contains(desc.getName()))
+                throw new InvalidClassException(desc.getName(),
+                        "not part of a phrasebook");
+
+            return super.resolveClass(desc);
+        }
+
+        protected Class<?> resolveProxyClass(String[] interfaces)
+                throws IOException {
+            throw new InvalidClassException("proxy classes are not part "
+                    + "of a phrasebook");
+        }
+    }
+}
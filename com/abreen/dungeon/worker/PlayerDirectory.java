@@ -0,0 +1,97 @@
+package com.abreen.dungeon.worker;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.abreen.dungeon.model.Player;
+
+/**
+ * A universe-wide index of connected players by name. Names are compared
+ * case-insensitively, and a player may be referred to by any prefix of their
+ * name that no other player's name shares (e.g., "ali" for "Alice").
+ *
+ * The index is safe to read and modify from several connection threads at
+ * once without any further locking.
+ */
+public class PlayerDirectory {
+    private ConcurrentSkipListMap<String, Player> players;
+
+    /*
+     * Kept separately, since the size() of a skip list is not constant time.
+     */
+    private AtomicInteger size;
+
+    public PlayerDirectory() {
+        this.players = new ConcurrentSkipListMap<String, Player>();
+        this.size = new AtomicInteger();
+    }
+
+    /**
+     * Returns the form of a player name used as a key in this directory.
+     */
+    public static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Adds the player, unless a player whose name differs only in case is
+     * already in the directory.
+     * 
+     * @return True if the player was added
+     */
+    public boolean add(Player p) {
+        if (this.players.putIfAbsent(normalize(p.getName()), p) != null)
+            return false;
+
+        this.size.incrementAndGet();
+        return true;
+    }
+
+    public void remove(Player p) {
+        if (this.players.remove(normalize(p.getName()), p))
+            this.size.decrementAndGet();
+    }
+
+    /**
+     * Returns the player with exactly the specified name (ignoring case), or
+     * null if there is no such player.
+     */
+    public Player get(String name) {
+        return this.players.get(normalize(name));
+    }
+
+    /**
+     * Returns the player with the specified name, or else the only player
+     * whose name starts with the specified string. Returns null if there is
+     * no such player or if the abbreviation is ambiguous.
+     */
+    public Player resolve(String name) {
+        String key = normalize(name);
+        if (key.isEmpty())
+            return null;
+
+        Player p = this.players.get(key);
+        if (p != null)
+            return p;
+
+        Map.Entry<String, Player> first = this.players.ceilingEntry(key);
+        if (first == null || !first.getKey().startsWith(key))
+            return null;
+
+        Map.Entry<String, Player> second =
+                this.players.higherEntry(first.getKey());
+        if (second != null && second.getKey().startsWith(key))
+            return null;    // ambiguous
+
+        return first.getValue();
+    }
+
+    public Iterator<Player> iterator() {
+        return this.players.values().iterator();
+    }
+
+    public int size() {
+        return this.size.get();
+    }
+}